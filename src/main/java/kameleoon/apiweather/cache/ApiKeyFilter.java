@@ -0,0 +1,142 @@
+package kameleoon.apiweather.cache;
+
+import kameleoon.apiweather.rest.repository.ApiKeyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Вероятностный фильтр всех ключей из api_keys: ключ, которого там точно нет,
+// отклоняется без обращения к БД. Пока фильтр не загружен, пропускает всё
+@Component
+public class ApiKeyFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiKeyFilter.class);
+    private static final long MIN_SAMPLES_FOR_REBUILD = 1000;
+
+    private final ApiKeyRepository apiKeyRepository;
+    private final long expectedKeys;
+    private final double targetFalsePositiveRate;
+
+    private volatile CountingBloomFilter filter;
+    private volatile boolean ready;
+    private boolean rebuilding;
+    private final List<String> addedDuringRebuild = new ArrayList<>();
+
+    private final LongAdder rejectedKeys = new LongAdder();
+    private final LongAdder passedKeys = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final AtomicInteger rebuilds = new AtomicInteger();
+
+    public ApiKeyFilter(ApiKeyRepository apiKeyRepository,
+                        @Value("${weather.api-key-filter.expected-keys:10000}") long expectedKeys,
+                        @Value("${weather.api-key-filter.false-positive-rate:0.01}") double targetFalsePositiveRate) {
+        this.apiKeyRepository = apiKeyRepository;
+        this.expectedKeys = expectedKeys;
+        this.targetFalsePositiveRate = targetFalsePositiveRate;
+        this.filter = new CountingBloomFilter(expectedKeys, targetFalsePositiveRate);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        rebuildAsync();
+    }
+
+    public boolean mightContain(String apiKey) {
+        if (!ready) {
+            return true;
+        }
+        if (filter.mightContain(apiKey)) {
+            passedKeys.increment();
+            return true;
+        }
+        rejectedKeys.increment();
+        return false;
+    }
+
+    // ключ прошёл фильтр, но в БД его не оказалось
+    public void recordFalsePositive() {
+        if (!ready) {
+            return;
+        }
+        falsePositives.increment();
+        long passed = passedKeys.sum();
+        if (passed >= MIN_SAMPLES_FOR_REBUILD && (double) falsePositives.sum() / passed > 2 * targetFalsePositiveRate) {
+            rebuildAsync();
+        }
+    }
+
+    public synchronized void add(String apiKey) {
+        filter.add(apiKey);
+        if (rebuilding) {
+            addedDuringRebuild.add(apiKey);
+        }
+        if (filter.size() > filter.capacity()) {
+            rebuildAsync();
+        }
+    }
+
+    public synchronized void remove(String apiKey) {
+        filter.remove(apiKey);
+    }
+
+    public void rebuildAsync() {
+        synchronized (this) {
+            if (rebuilding) {
+                return;
+            }
+            rebuilding = true;
+            addedDuringRebuild.clear();
+        }
+        Thread.ofVirtual().name("api-key-filter-rebuild").start(this::rebuild);
+    }
+
+    public Map<String, Object> getStats() {
+        CountingBloomFilter current = filter;
+        long passed = passedKeys.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", ready);
+        stats.put("keys", current.size());
+        stats.put("capacity", current.capacity());
+        stats.put("sizeInBytes", current.sizeInBytes());
+        stats.put("expectedFalsePositiveRate", current.expectedFalsePositiveRate());
+        stats.put("observedFalsePositiveRate", passed == 0 ? 0.0 : (double) falsePositives.sum() / passed);
+        stats.put("rejectedKeys", rejectedKeys.sum());
+        stats.put("passedKeys", passed);
+        stats.put("rebuilds", rebuilds.get());
+        return stats;
+    }
+
+    private void rebuild() {
+        try {
+            List<String> keys = apiKeyRepository.findAllApiKeys();
+            CountingBloomFilter rebuilt = new CountingBloomFilter(Math.max(expectedKeys, 2L * keys.size()), targetFalsePositiveRate);
+            keys.forEach(rebuilt::add);
+            synchronized (this) {
+                // удаления за время перестройки не переигрываются: лишний ключ даёт лишь ложное срабатывание
+                addedDuringRebuild.forEach(rebuilt::add);
+                filter = rebuilt;
+                ready = true;
+            }
+            passedKeys.reset();
+            falsePositives.reset();
+            rebuilds.incrementAndGet();
+            logger.info("API key filter rebuilt with {} keys (capacity {})", rebuilt.size(), rebuilt.capacity());
+        } catch (Exception e) {
+            logger.warn("API key filter rebuild failed: {}", e.getMessage());
+        } finally {
+            synchronized (this) {
+                rebuilding = false;
+                addedDuringRebuild.clear();
+            }
+        }
+    }
+}
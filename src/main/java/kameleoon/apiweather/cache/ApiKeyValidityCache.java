@@ -0,0 +1,69 @@
+package kameleoon.apiweather.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+// Общий для ApiKeyService и SdkApiKeyService: обе сущности смотрят в одну таблицу api_keys
+@Component
+public class ApiKeyValidityCache {
+
+    private final BoundedCache<String, Validity> cache;
+    private final long positiveTtlMillis;
+    private final long negativeTtlMillis;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private record Validity(boolean valid, long expiresAt) {
+    }
+
+    public ApiKeyValidityCache(@Value("${weather.api-key-cache.max-size:10000}") int maxSize,
+                               @Value("${weather.api-key-cache.positive-ttl-millis:300000}") long positiveTtlMillis,
+                               @Value("${weather.api-key-cache.negative-ttl-millis:30000}") long negativeTtlMillis) {
+        this.cache = BoundedCache.create(maxSize, LruPolicy.NAME);
+        this.positiveTtlMillis = positiveTtlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    public boolean isValid(String apiKey, Predicate<String> loader) {
+        Validity cached = cache.get(apiKey);
+        long now = System.currentTimeMillis();
+        if (cached != null && cached.expiresAt() > now) {
+            cache.stats().recordHit();
+            return cached.valid();
+        }
+        cache.stats().recordMiss();
+
+        // если ключ сохранили или удалили, пока шёл запрос в БД, результат уже мог устареть
+        long generation = invalidations.get();
+        long loadStart = System.nanoTime();
+        boolean valid;
+        try {
+            valid = loader.test(apiKey);
+        } catch (RuntimeException e) {
+            cache.stats().recordLoadFailure(System.nanoTime() - loadStart);
+            throw e;
+        }
+        cache.stats().recordLoadSuccess(System.nanoTime() - loadStart);
+        if (invalidations.get() == generation) {
+            long ttl = valid ? positiveTtlMillis : negativeTtlMillis;
+            cache.put(apiKey, new Validity(valid, System.currentTimeMillis() + ttl));
+        }
+        return valid;
+    }
+
+    public void invalidate(String apiKey) {
+        invalidations.incrementAndGet();
+        cache.remove(apiKey);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", cache.size());
+        stats.put("maxSize", cache.maximumSize());
+        stats.putAll(cache.stats().toMap());
+        return stats;
+    }
+}
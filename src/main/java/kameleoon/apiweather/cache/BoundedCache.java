@@ -0,0 +1,138 @@
+package kameleoon.apiweather.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Чтения идут напрямую в ConcurrentHashMap без блокировок; обращения складываются
+// в полосатый буфер и применяются к политике вытеснения пачкой, когда блокировка свободна
+public class BoundedCache<K, V> {
+
+    private final int maximumSize;
+    private final EvictionPolicy<K> policy;
+    private final ConcurrentHashMap<K, V> data = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ReadBuffer<K> readBuffer = new ReadBuffer<>();
+    private final CacheStats stats = new CacheStats();
+    private final Consumer<K> removalListener;
+
+    public BoundedCache(int maximumSize, EvictionPolicy<K> policy) {
+        this(maximumSize, policy, key -> { });
+    }
+
+    // removalListener получает ключи, вытесненные политикой или удалённые через remove; clear его не вызывает.
+    // Слушатель работает под блокировкой кэша и должен быть быстрым
+    public BoundedCache(int maximumSize, EvictionPolicy<K> policy, Consumer<K> removalListener) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.policy = policy;
+        this.removalListener = removalListener;
+    }
+
+    public static <K, V> BoundedCache<K, V> create(int maximumSize, String policyName) {
+        return new BoundedCache<>(maximumSize, EvictionPolicy.create(policyName, maximumSize));
+    }
+
+    public static <K, V> BoundedCache<K, V> create(int maximumSize, String policyName, Consumer<K> removalListener) {
+        return new BoundedCache<>(maximumSize, EvictionPolicy.create(policyName, maximumSize), removalListener);
+    }
+
+    public V get(K key) {
+        V value = data.get(key);
+        if (value != null) {
+            recordRead(key);
+        }
+        return value;
+    }
+
+    public V peek(K key) {
+        return data.get(key);
+    }
+
+    public void put(K key, V value) {
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            data.put(key, value);
+            for (K victim : policy.recordWrite(key)) {
+                data.remove(victim);
+                stats.recordEviction();
+                removalListener.accept(victim);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public V remove(K key) {
+        evictionLock.lock();
+        try {
+            V removed = data.remove(key);
+            if (removed != null) {
+                policy.recordRemoval(key);
+                removalListener.accept(key);
+            }
+            return removed;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void clear() {
+        evictionLock.lock();
+        try {
+            data.clear();
+            policy.clear();
+            readBuffer.clear();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public List<K> keys() {
+        return new ArrayList<>(data.keySet());
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    public String policyName() {
+        return policy.name();
+    }
+
+    public CacheStats stats() {
+        return stats;
+    }
+
+    private void recordRead(K key) {
+        // при переполнении полосы обращение просто теряется: порядок вытеснения приблизительный
+        if (readBuffer.offer(key) && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void drainReadBuffer() {
+        readBuffer.drainTo(key -> {
+            if (data.containsKey(key)) {
+                policy.recordAccess(key);
+            }
+        });
+    }
+}
@@ -0,0 +1,113 @@
+package kameleoon.apiweather.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+// Бинарный снимок содержимого кэша для тёплого старта.
+// Формат: magic, version, count, записи (group, key, originalApiKey, timestamp, payload), CRC32C всего перед ним
+public final class CacheSnapshot {
+
+    private static final int MAGIC = 0x57534E50; // "WSNP"
+    private static final int VERSION = 1;
+
+    public record Entry(String group, String key, String originalApiKey, long timestamp, byte[] payload) {
+    }
+
+    private CacheSnapshot() {
+    }
+
+    // пишет во временный файл и атомарно подменяет старый снимок, чтобы читатель не увидел половину файла
+    public static void write(Path file, List<Entry> entries) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            DataOutputStream checked = new DataOutputStream(new CheckedOutputStream(out, crc));
+            checked.writeInt(MAGIC);
+            checked.writeInt(VERSION);
+            checked.writeInt(entries.size());
+            for (Entry entry : entries) {
+                writeString(checked, entry.group());
+                writeString(checked, entry.key());
+                writeString(checked, entry.originalApiKey());
+                checked.writeLong(entry.timestamp());
+                checked.writeInt(entry.payload().length);
+                checked.write(entry.payload());
+            }
+            checked.flush();
+            out.writeLong(crc.getValue());
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // файл отображается в память целиком, записи читаются без промежуточных потоков; нет файла — пустой список
+    public static List<Entry> read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int bodyLength = buffer.limit() - Long.BYTES;
+            if (bodyLength < 3 * Integer.BYTES) {
+                throw new IOException("Snapshot is truncated: " + file);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(0, bodyLength));
+            if (crc.getValue() != buffer.getLong(bodyLength)) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Unsupported snapshot format: " + file);
+            }
+            int count = buffer.getInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String group = readString(buffer);
+                String key = readString(buffer);
+                String originalApiKey = readString(buffer);
+                long timestamp = buffer.getLong();
+                byte[] payload = new byte[buffer.getInt()];
+                buffer.get(payload);
+                entries.add(new Entry(group, key, originalApiKey, timestamp, payload));
+            }
+            return entries;
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Snapshot is corrupted: " + file, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,75 @@
+package kameleoon.apiweather.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class CacheStats {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadTimeNanos = new LongAdder();
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordStaleHit() {
+        hits.increment();
+        staleHits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public void recordEviction() {
+        evictions.increment();
+    }
+
+    public void recordLoadSuccess(long loadTimeNanos) {
+        loadSuccesses.increment();
+        totalLoadTimeNanos.add(loadTimeNanos);
+    }
+
+    public void recordLoadFailure(long loadTimeNanos) {
+        loadFailures.increment();
+        totalLoadTimeNanos.add(loadTimeNanos);
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public Map<String, Object> toMap() {
+        long hitCount = hits.sum();
+        long requestCount = hitCount + misses.sum();
+        long loadCount = loadSuccesses.sum() + loadFailures.sum();
+        long loadTimeNanos = totalLoadTimeNanos.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hitCount", hitCount);
+        stats.put("missCount", misses.sum());
+        stats.put("hitRate", requestCount == 0 ? 0.0 : (double) hitCount / requestCount);
+        stats.put("staleHitCount", staleHits.sum());
+        stats.put("evictionCount", evictions.sum());
+        stats.put("loadSuccessCount", loadSuccesses.sum());
+        stats.put("loadFailureCount", loadFailures.sum());
+        stats.put("totalLoadTimeMillis", TimeUnit.NANOSECONDS.toMillis(loadTimeNanos));
+        stats.put("averageLoadTimeMillis", loadCount == 0 ? 0.0 : loadTimeNanos / 1_000_000.0 / loadCount);
+        return stats;
+    }
+}
@@ -0,0 +1,77 @@
+package kameleoon.apiweather.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+// Приводит название города к ключу слота кэша: NFKC, обрезка и схлопывание пробелов, нижний регистр.
+// После ответа OpenWeatherMap имя связывается с id города, и все имена с тем же id
+// ("London", "London,GB") попадают в слот того имени, которое пришло первым
+@Component
+public class CityNameCanonicalizer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern COMMA = Pattern.compile("\\s*,\\s*");
+
+    private final boolean resolveIds;
+    private final int maxAliases;
+
+    private final Map<String, String> aliasToSlot = new ConcurrentHashMap<>();
+    private final Map<Integer, String> idToSlot = new ConcurrentHashMap<>();
+
+    private final LongAdder normalizedRequests = new LongAdder();
+    private final LongAdder mergedDuplicates = new LongAdder();
+
+    public CityNameCanonicalizer(@Value("${weather.city-names.resolve-ids:true}") boolean resolveIds,
+                                 @Value("${weather.city-names.max-aliases:100000}") int maxAliases) {
+        this.resolveIds = resolveIds;
+        this.maxAliases = maxAliases;
+    }
+
+    public static String normalize(String cityName) {
+        String normalized = Normalizer.normalize(cityName, Normalizer.Form.NFKC).strip();
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ");
+        normalized = COMMA.matcher(normalized).replaceAll(",");
+        return normalized.toLowerCase(Locale.ROOT);
+    }
+
+    public String resolve(String cityName) {
+        String canonical = normalize(cityName);
+        String slot = aliasToSlot.getOrDefault(canonical, canonical);
+        if (!slot.equals(cityName)) {
+            normalizedRequests.increment();
+        }
+        return slot;
+    }
+
+    // вызывается после загрузки города; возвращает слот, в который нужно положить ответ
+    public String learn(String slot, int cityId) {
+        if (!resolveIds || cityId == 0) {
+            return slot;
+        }
+        String existing = idToSlot.size() < maxAliases ? idToSlot.putIfAbsent(cityId, slot) : idToSlot.get(cityId);
+        if (existing == null || existing.equals(slot)) {
+            return slot;
+        }
+        if (aliasToSlot.size() < maxAliases && aliasToSlot.putIfAbsent(slot, existing) == null) {
+            mergedDuplicates.increment();
+        }
+        return existing;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("resolveIds", resolveIds);
+        stats.put("knownCityIds", idToSlot.size());
+        stats.put("aliases", aliasToSlot.size());
+        stats.put("mergedDuplicateSlots", mergedDuplicates.sum());
+        stats.put("normalizedRequests", normalizedRequests.sum());
+        return stats;
+    }
+}
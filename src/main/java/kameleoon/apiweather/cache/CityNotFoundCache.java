@@ -0,0 +1,52 @@
+package kameleoon.apiweather.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Короткоживущий кэш ответов "city not found", общий для WeatherService и SdkWeatherService.
+// Ключ — каноническое имя города (см. CityNameCanonicalizer). W-TinyLFU не даёт потоку разовых
+// опечаток вытеснить часто повторяемые: новый ключ попадает в основной сегмент, только если встречался чаще жертвы
+@Component
+public class CityNotFoundCache {
+
+    private final BoundedCache<String, Long> cache;
+    private final long ttlMillis;
+
+    public CityNotFoundCache(@Value("${weather.city-not-found-cache.max-size:1000}") int maxSize,
+                             @Value("${weather.city-not-found-cache.ttl-millis:300000}") long ttlMillis) {
+        this.cache = BoundedCache.create(maxSize, WindowTinyLfuPolicy.NAME);
+        this.ttlMillis = ttlMillis;
+    }
+
+    // true — OpenWeatherMap недавно не нашёл этот город, идти к нему снова не нужно
+    public boolean isNotFound(String cityName) {
+        if (ttlMillis <= 0) {
+            return false;
+        }
+        Long expiresAt = cache.get(cityName);
+        if (expiresAt != null && expiresAt > System.currentTimeMillis()) {
+            cache.stats().recordHit();
+            return true;
+        }
+        cache.stats().recordMiss();
+        return false;
+    }
+
+    public void put(String cityName) {
+        if (ttlMillis > 0) {
+            cache.put(cityName, System.currentTimeMillis() + ttlMillis);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", cache.size());
+        stats.put("maxSize", cache.maximumSize());
+        stats.put("ttlMillis", ttlMillis);
+        stats.put("evictionPolicy", cache.policyName());
+        stats.putAll(cache.stats().toMap());
+        return stats;
+    }
+}
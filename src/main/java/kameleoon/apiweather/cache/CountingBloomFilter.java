@@ -0,0 +1,112 @@
+package kameleoon.apiweather.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bloom-фильтр с 4-битными счётчиками (по 16 в одном long), поэтому поддерживает удаление.
+// Насыщенный счётчик больше не уменьшается, чтобы удаление не давало ложных отрицаний
+class CountingBloomFilter {
+
+    private static final int COUNTER_BITS = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+    private static final long COUNTER_MAX = (1L << COUNTER_BITS) - 1;
+
+    private final AtomicLongArray words;
+    private final long counters;
+    private final int hashes;
+    private final long capacity;
+    private final AtomicLong size = new AtomicLong();
+
+    CountingBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.counters = Math.max(COUNTERS_PER_WORD, m);
+        this.hashes = Math.max(1, (int) Math.round((double) counters / n * Math.log(2)));
+        this.words = new AtomicLongArray(Math.toIntExact((counters + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD));
+        this.capacity = n;
+    }
+
+    void add(String key) {
+        long hash = hash64(key);
+        for (int i = 0; i < hashes; i++) {
+            update(index(hash, i), 1);
+        }
+        size.incrementAndGet();
+    }
+
+    void remove(String key) {
+        long hash = hash64(key);
+        for (int i = 0; i < hashes; i++) {
+            update(index(hash, i), -1);
+        }
+        size.decrementAndGet();
+    }
+
+    boolean mightContain(String key) {
+        long hash = hash64(key);
+        for (int i = 0; i < hashes; i++) {
+            long index = index(hash, i);
+            if (counterAt(words.get((int) (index / COUNTERS_PER_WORD)), index) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long size() {
+        return size.get();
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    long sizeInBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    double expectedFalsePositiveRate() {
+        double fill = 1 - Math.exp(-(double) hashes * Math.max(0, size.get()) / counters);
+        return Math.pow(fill, hashes);
+    }
+
+    private void update(long index, int delta) {
+        int word = (int) (index / COUNTERS_PER_WORD);
+        int shift = (int) (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+        while (true) {
+            long current = words.get(word);
+            long counter = (current >>> shift) & COUNTER_MAX;
+            if (counter == COUNTER_MAX || (delta < 0 && counter == 0)) {
+                return;
+            }
+            long updated = delta > 0 ? current + (1L << shift) : current - (1L << shift);
+            if (words.compareAndSet(word, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    private long counterAt(long word, long index) {
+        int shift = (int) (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+        return (word >>> shift) & COUNTER_MAX;
+    }
+
+    private long index(long hash, int i) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long combined = h1 + (long) i * h2;
+        return Math.floorMod(combined, counters);
+    }
+
+    private static long hash64(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
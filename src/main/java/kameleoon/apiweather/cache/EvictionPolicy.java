@@ -0,0 +1,27 @@
+package kameleoon.apiweather.cache;
+
+import java.util.List;
+
+// Реализации не потокобезопасны: BoundedCache вызывает их только под своей блокировкой
+public interface EvictionPolicy<K> {
+
+    String name();
+
+    void recordAccess(K key);
+
+    List<K> recordWrite(K key);
+
+    void recordRemoval(K key);
+
+    void clear();
+
+    static <K> EvictionPolicy<K> create(String name, int maximumSize) {
+        if (LruPolicy.NAME.equalsIgnoreCase(name)) {
+            return new LruPolicy<>(maximumSize);
+        }
+        if (WindowTinyLfuPolicy.NAME.equalsIgnoreCase(name)) {
+            return new WindowTinyLfuPolicy<>(maximumSize);
+        }
+        throw new IllegalArgumentException("Unknown eviction policy: " + name);
+    }
+}
@@ -0,0 +1,129 @@
+package kameleoon.apiweather.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+// Индекс точек по сетке из ячеек cellDegrees x cellDegrees. Поиск перебирает только ячейки,
+// покрывающие радиус. Из индекса ключ убирает только владелец (например, при вытеснении из кэша)
+public class GridSpatialIndex<K> {
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    public record Match<K>(K key, double distanceKm) {
+    }
+
+    private record Point(double lat, double lon, long cell) {
+    }
+
+    private final double cellDegrees;
+    private final int columns;
+    private final int rows;
+    private final Map<Long, Set<K>> cells = new ConcurrentHashMap<>();
+    private final Map<K, Point> points = new ConcurrentHashMap<>();
+
+    public GridSpatialIndex(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+        this.columns = (int) Math.ceil(360 / cellDegrees);
+        this.rows = (int) Math.ceil(180 / cellDegrees) + 1;
+    }
+
+    public void put(K key, double lat, double lon) {
+        Point point = new Point(lat, lon, cell(row(lat), column(lon)));
+        Point previous = points.put(key, point);
+        if (previous != null && previous.cell() != point.cell()) {
+            removeFromCell(previous.cell(), key);
+        }
+        cells.compute(point.cell(), (c, keys) -> {
+            Set<K> cellKeys = keys != null ? keys : ConcurrentHashMap.newKeySet();
+            cellKeys.add(key);
+            return cellKeys;
+        });
+    }
+
+    public void remove(K key) {
+        Point previous = points.remove(key);
+        if (previous != null) {
+            removeFromCell(previous.cell(), key);
+        }
+    }
+
+    public void clear() {
+        points.clear();
+        cells.clear();
+    }
+
+    public int size() {
+        return points.size();
+    }
+
+    // ближайший ключ в радиусе, принятый accept; отвергнутые ключи пропускаются, но остаются в индексе
+    public Match<K> nearest(double lat, double lon, double radiusKm, Predicate<K> accept) {
+        double latSpan = radiusKm / KM_PER_DEGREE;
+        int firstRow = row(Math.max(-90, lat - latSpan));
+        int lastRow = row(Math.min(90, lat + latSpan));
+        double widestLat = Math.min(90, Math.abs(lat) + latSpan);
+        int columnSpan = widestLat >= 89.9 ? columns
+                : (int) Math.min(columns, Math.ceil(latSpan / Math.cos(Math.toRadians(widestLat)) / cellDegrees) * 2 + 1);
+        int firstColumn = column(lon) - columnSpan / 2;
+
+        List<Match<K>> candidates = new ArrayList<>();
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int i = 0; i < columnSpan; i++) {
+                Set<K> keys = cells.get(cell(row, Math.floorMod(firstColumn + i, columns)));
+                if (keys == null) {
+                    continue;
+                }
+                for (K key : keys) {
+                    Point point = points.get(key);
+                    if (point == null) {
+                        continue;
+                    }
+                    double distance = distanceKm(lat, lon, point.lat(), point.lon());
+                    if (distance <= radiusKm) {
+                        candidates.add(new Match<>(key, distance));
+                    }
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(Match::distanceKm));
+        for (Match<K> candidate : candidates) {
+            if (accept.test(candidate.key())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private void removeFromCell(long cell, K key) {
+        cells.computeIfPresent(cell, (c, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor((lat + 90) / cellDegrees);
+    }
+
+    private int column(double lon) {
+        return Math.floorMod((int) Math.floor((lon + 180) / cellDegrees), columns);
+    }
+
+    private long cell(int row, int column) {
+        return (long) row * columns + column;
+    }
+}
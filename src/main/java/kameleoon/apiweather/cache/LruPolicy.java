@@ -0,0 +1,52 @@
+package kameleoon.apiweather.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+public class LruPolicy<K> implements EvictionPolicy<K> {
+
+    public static final String NAME = "lru";
+
+    private final int maximumSize;
+    private final LinkedHashMap<K, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    public LruPolicy(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        order.get(key);
+    }
+
+    @Override
+    public List<K> recordWrite(K key) {
+        if (order.put(key, Boolean.TRUE) != null) {
+            return List.of();
+        }
+        List<K> victims = new ArrayList<>(1);
+        Iterator<K> eldest = order.keySet().iterator();
+        while (order.size() > maximumSize && eldest.hasNext()) {
+            victims.add(eldest.next());
+            eldest.remove();
+        }
+        return victims;
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        order.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        order.clear();
+    }
+}
@@ -0,0 +1,128 @@
+package kameleoon.apiweather.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Хранилище сериализованных значений вне кучи: кольцо direct-сегментов с общим бюджетом байт.
+// Значения только дописываются; когда кольцо заполнено, самый старый сегмент переиспользуется целиком (FIFO).
+// Адрес значения — long (номер сегмента << 32 | смещение), поэтому индекс в куче — это одно поле у записи кэша.
+// Чтение без блокировок: номер сегмента проверяется до и после копирования, как в seqlock
+@Component
+public class OffHeapStore {
+
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    private final int segmentBytes;
+    private final ByteBuffer[] segments;
+    private final AtomicIntegerArray slotSequences;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private int currentSequence = -1;
+    private int writeOffset;
+
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder evictedReads = new LongAdder();
+    private final LongAdder recycledSegments = new LongAdder();
+
+    public OffHeapStore(@Value("${weather.off-heap.max-bytes:268435456}") long maxBytes,
+                        @Value("${weather.off-heap.segment-bytes:4194304}") int segmentBytes) {
+        int segmentCount = (int) Math.max(2, maxBytes / segmentBytes);
+        this.segmentBytes = segmentBytes;
+        this.segments = new ByteBuffer[segmentCount];
+        this.slotSequences = new AtomicIntegerArray(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            slotSequences.set(i, -1);
+        }
+    }
+
+    public long write(byte[] payload) {
+        int needed = LENGTH_BYTES + payload.length;
+        if (needed > segmentBytes) {
+            throw new IllegalArgumentException("Payload of " + payload.length + " bytes does not fit an off-heap segment");
+        }
+        writeLock.lock();
+        try {
+            if (currentSequence < 0 || writeOffset + needed > segmentBytes) {
+                advanceSegment();
+            }
+            ByteBuffer segment = segments[slot(currentSequence)];
+            int offset = writeOffset;
+            segment.putInt(offset, payload.length);
+            segment.put(offset + LENGTH_BYTES, payload);
+            writeOffset += needed;
+            writes.increment();
+            bytesWritten.add(needed);
+            return ((long) currentSequence << 32) | offset;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // null, если сегмент со значением уже переиспользован
+    public byte[] read(long address) {
+        int sequence = (int) (address >>> 32);
+        int offset = (int) address;
+        int slot = slot(sequence);
+        if (slotSequences.get(slot) != sequence) {
+            evictedReads.increment();
+            return null;
+        }
+        ByteBuffer segment = segments[slot];
+        int length = segment.getInt(offset);
+        byte[] payload = null;
+        if (length >= 0 && length <= segmentBytes - offset - LENGTH_BYTES) {
+            payload = new byte[length];
+            segment.get(offset + LENGTH_BYTES, payload);
+        }
+        VarHandle.loadLoadFence();
+        if (payload == null || slotSequences.get(slot) != sequence) {
+            evictedReads.increment();
+            return null;
+        }
+        return payload;
+    }
+
+    public Map<String, Object> getStats() {
+        int allocated = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (slotSequences.get(i) >= 0) {
+                allocated++;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxBytes", (long) segments.length * segmentBytes);
+        stats.put("allocatedBytes", (long) allocated * segmentBytes);
+        stats.put("segmentBytes", segmentBytes);
+        stats.put("writeCount", writes.sum());
+        stats.put("bytesWritten", bytesWritten.sum());
+        stats.put("recycledSegments", recycledSegments.sum());
+        stats.put("evictedReadCount", evictedReads.sum());
+        return stats;
+    }
+
+    private void advanceSegment() {
+        int next = currentSequence + 1;
+        int slot = slot(next);
+        if (segments[slot] == null) {
+            segments[slot] = ByteBuffer.allocateDirect(segmentBytes);
+        } else {
+            recycledSegments.increment();
+        }
+        // новый номер публикуется до перезаписи данных, чтобы читатель старого сегмента заметил подмену
+        slotSequences.set(slot, next);
+        VarHandle.storeStoreFence();
+        currentSequence = next;
+        writeOffset = 0;
+    }
+
+    private int slot(int sequence) {
+        return Math.floorMod(sequence, segments.length);
+    }
+}
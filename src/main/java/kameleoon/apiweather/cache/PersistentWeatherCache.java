@@ -0,0 +1,196 @@
+package kameleoon.apiweather.cache;
+
+import kameleoon.apiweather.rest.entity.WeatherData;
+import kameleoon.apiweather.rest.repository.WeatherRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Второй уровень кэша в таблице cached_weather. Записи копятся в памяти (по одной на город)
+// и сбрасываются пачкой; пока запись не сброшена, чтение отдаёт её из очереди
+@Component
+public class PersistentWeatherCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistentWeatherCache.class);
+    private static final String POLLING_GROUP = "persistent-weather-cache";
+
+    public record Stored(String json, long timestamp) {
+    }
+
+    private final WeatherRepository weatherRepository;
+    private final PollingEngine pollingEngine;
+    private final boolean enabled;
+    private final long flushIntervalMillis;
+    private final long retentionMillis;
+    private final int maxPendingWrites;
+
+    private final Map<String, Stored> pendingWrites = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder droppedWrites = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+
+    public PersistentWeatherCache(WeatherRepository weatherRepository, PollingEngine pollingEngine,
+                                  @Value("${weather.l2-cache.enabled:true}") boolean enabled,
+                                  @Value("${weather.l2-cache.flush-interval-millis:1000}") long flushIntervalMillis,
+                                  @Value("${weather.l2-cache.retention-millis:3600000}") long retentionMillis,
+                                  @Value("${weather.l2-cache.max-pending-writes:10000}") int maxPendingWrites) {
+        this.weatherRepository = weatherRepository;
+        this.pollingEngine = pollingEngine;
+        this.enabled = enabled;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.retentionMillis = retentionMillis;
+        this.maxPendingWrites = maxPendingWrites;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        pollingEngine.schedule(POLLING_GROUP, "flush", flushIntervalMillis, flushIntervalMillis, this::flush);
+        pollingEngine.schedule(POLLING_GROUP, "purge", retentionMillis, retentionMillis, this::purgeExpired);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pollingEngine.cancelGroup(POLLING_GROUP);
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Ответ не старше maxAgeMillis или null; ошибки БД считаются промахом. Сервисы спрашивают
+    // здесь перед походом к OpenWeatherMap: город могла уже загрузить другая реплика или прошлый запуск
+    public Stored find(String cityName, long maxAgeMillis) {
+        if (!enabled) {
+            return null;
+        }
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        Stored pending = pendingWrites.get(cityName);
+        if (pending != null && pending.timestamp() > cutoff) {
+            hits.increment();
+            return pending;
+        }
+        try {
+            Stored stored = weatherRepository.findByCityNameAndTimestampAfter(cityName, toLocalDateTime(cutoff))
+                    .map(row -> new Stored(row.getWeatherJson(), toEpochMillis(row.getTimestamp())))
+                    .orElse(null);
+            if (stored != null) {
+                hits.increment();
+                return stored;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Persistent cache lookup failed for city {}: {}", cityName, e.getMessage());
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void store(String cityName, String json, long timestamp) {
+        if (!enabled) {
+            return;
+        }
+        if (pendingWrites.size() >= maxPendingWrites && !pendingWrites.containsKey(cityName)) {
+            droppedWrites.increment();
+            return;
+        }
+        pendingWrites.merge(cityName, new Stored(json, timestamp),
+                (current, update) -> update.timestamp() >= current.timestamp() ? update : current);
+        writes.increment();
+    }
+
+    // Существующие строки обновляются, новые вставляются, всё одним saveAll. Если запись
+    // не удалась (например, другая реплика вставила тот же город), очередь повторится в следующий раз
+    public void flush() {
+        if (pendingWrites.isEmpty() || !flushLock.tryLock()) {
+            return;
+        }
+        try {
+            Map<String, Stored> batch = new HashMap<>(pendingWrites);
+            Map<String, WeatherData> existing = weatherRepository.findByCityNameIn(batch.keySet()).stream()
+                    .collect(Collectors.toMap(WeatherData::getCityName, Function.identity(), (a, b) -> a));
+
+            List<WeatherData> rows = new ArrayList<>(batch.size());
+            batch.forEach((cityName, stored) -> {
+                LocalDateTime timestamp = toLocalDateTime(stored.timestamp());
+                WeatherData row = existing.get(cityName);
+                if (row == null) {
+                    rows.add(new WeatherData(cityName, stored.json(), timestamp));
+                } else if (row.getTimestamp().isBefore(timestamp)) {
+                    row.setWeatherJson(stored.json());
+                    row.setTimestamp(timestamp);
+                    rows.add(row);
+                }
+            });
+            weatherRepository.saveAll(rows);
+
+            // значение, обновлённое во время saveAll, остаётся в очереди до следующего сброса
+            batch.forEach((cityName, stored) -> pendingWrites.remove(cityName, stored));
+            flushedRows.add(rows.size());
+        } catch (RuntimeException e) {
+            failedFlushes.increment();
+            logger.warn("Persistent cache flush failed, {} entries kept for retry: {}", pendingWrites.size(), e.getMessage());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void purgeExpired() {
+        try {
+            int removed = weatherRepository.deleteOlderThan(toLocalDateTime(System.currentTimeMillis() - retentionMillis));
+            if (removed > 0) {
+                logger.info("Persistent cache purged {} expired rows", removed);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Persistent cache purge failed: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long lookups = hitCount + missCount;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hitCount", hitCount);
+        stats.put("missCount", missCount);
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        stats.put("pendingWrites", pendingWrites.size());
+        stats.put("writeCount", writes.sum());
+        stats.put("droppedWriteCount", droppedWrites.sum());
+        stats.put("flushedRowCount", flushedRows.sum());
+        stats.put("failedFlushCount", failedFlushes.sum());
+        return stats;
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    private static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,208 @@
+package kameleoon.apiweather.cache;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Один поток-диспетчер держит очередь задач, упорядоченную по времени следующего запуска,
+// и отдаёт созревшие задачи виртуальным потокам в пределах общего лимита и лимита на группу (API-ключ)
+@Component
+public class PollingEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(PollingEngine.class);
+    private static final long GROUP_BUSY_RETRY_MILLIS = 100;
+
+    private final int maxConcurrentPerGroup;
+    private final Semaphore globalPermits;
+    private final DelayQueue<ScheduledTask> queue = new DelayQueue<>();
+    private final Map<String, Map<String, ScheduledTask>> groups = new ConcurrentHashMap<>();
+    private final Map<String, Semaphore> groupPermits = new ConcurrentHashMap<>();
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    private final AtomicInteger scheduledTasks = new AtomicInteger();
+    private final AtomicInteger activeTasks = new AtomicInteger();
+    private final LongAdder dispatchedTasks = new LongAdder();
+    private final LongAdder totalLagMillis = new LongAdder();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    public PollingEngine(@Value("${weather.polling.max-concurrent:64}") int maxConcurrent,
+                         @Value("${weather.polling.max-concurrent-per-key:4}") int maxConcurrentPerGroup) {
+        this.globalPermits = new Semaphore(maxConcurrent);
+        this.maxConcurrentPerGroup = maxConcurrentPerGroup;
+        this.dispatcher = Thread.ofPlatform()
+                .name("weather-polling-dispatcher")
+                .daemon()
+                .start(this::dispatchLoop);
+    }
+
+    public void schedule(String group, String taskId, long delayMillis, long periodMillis, Runnable action) {
+        ScheduledTask task = new ScheduledTask(group, taskId, periodMillis, action);
+        task.dueAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        ScheduledTask previous = groups.computeIfAbsent(group, g -> new ConcurrentHashMap<>()).put(taskId, task);
+        if (previous != null) {
+            previous.cancelled = true;
+        } else {
+            scheduledTasks.incrementAndGet();
+        }
+        queue.add(task);
+    }
+
+    public void cancel(String group, String taskId) {
+        Map<String, ScheduledTask> tasks = groups.get(group);
+        if (tasks != null) {
+            ScheduledTask task = tasks.remove(taskId);
+            if (task != null) {
+                task.cancelled = true;
+                scheduledTasks.decrementAndGet();
+            }
+        }
+    }
+
+    public void cancelGroup(String group) {
+        Map<String, ScheduledTask> tasks = groups.remove(group);
+        if (tasks != null) {
+            for (ScheduledTask task : tasks.values()) {
+                task.cancelled = true;
+                scheduledTasks.decrementAndGet();
+            }
+        }
+        groupPermits.remove(group);
+    }
+
+    public Map<String, Object> getStats() {
+        long dispatched = dispatchedTasks.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("scheduledTasks", scheduledTasks.get());
+        stats.put("activeTasks", activeTasks.get());
+        stats.put("dispatchedTasks", dispatched);
+        stats.put("averageSchedulingLagMillis", dispatched == 0 ? 0.0 : (double) totalLagMillis.sum() / dispatched);
+        stats.put("maxSchedulingLagMillis", maxLagMillis.get());
+        stats.put("dispatcherThreads", 1);
+        stats.put("jvmThreadCount", ManagementFactory.getThreadMXBean().getThreadCount());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+        workers.shutdownNow();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            ScheduledTask task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task.cancelled) {
+                continue;
+            }
+
+            Semaphore perGroup = groupPermits.computeIfAbsent(task.group, g -> new Semaphore(maxConcurrentPerGroup));
+            if (!perGroup.tryAcquire()) {
+                task.dueAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GROUP_BUSY_RETRY_MILLIS);
+                queue.add(task);
+                continue;
+            }
+            try {
+                globalPermits.acquire();
+            } catch (InterruptedException e) {
+                perGroup.release();
+                Thread.currentThread().interrupt();
+                return;
+            }
+            recordLag(task);
+            dispatch(task, perGroup);
+        }
+    }
+
+    private void dispatch(ScheduledTask task, Semaphore perGroup) {
+        try {
+            workers.execute(() -> {
+                activeTasks.incrementAndGet();
+                try {
+                    task.action.run();
+                } catch (Exception e) {
+                    logger.warn("Polling task {} for {} failed: {}", task.taskId, task.group, e.getMessage());
+                } finally {
+                    activeTasks.decrementAndGet();
+                    globalPermits.release();
+                    perGroup.release();
+                    reschedule(task);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            globalPermits.release();
+            perGroup.release();
+        }
+    }
+
+    private void reschedule(ScheduledTask task) {
+        if (task.periodMillis <= 0) {
+            Map<String, ScheduledTask> tasks = groups.get(task.group);
+            if (tasks != null && tasks.remove(task.taskId, task)) {
+                scheduledTasks.decrementAndGet();
+            }
+            return;
+        }
+        if (!task.cancelled && running) {
+            task.dueAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(task.periodMillis);
+            queue.add(task);
+        }
+    }
+
+    private void recordLag(ScheduledTask task) {
+        long lagMillis = Math.max(0, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - task.dueAtNanos));
+        dispatchedTasks.increment();
+        totalLagMillis.add(lagMillis);
+        maxLagMillis.accumulateAndGet(lagMillis, Math::max);
+    }
+
+    private static final class ScheduledTask implements Delayed {
+        final String group;
+        final String taskId;
+        final long periodMillis;
+        final Runnable action;
+        volatile long dueAtNanos;
+        volatile boolean cancelled;
+
+        ScheduledTask(String group, String taskId, long periodMillis, Runnable action) {
+            this.group = group;
+            this.taskId = taskId;
+            this.periodMillis = periodMillis;
+            this.action = action;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueAtNanos, ((ScheduledTask) other).dueAtNanos);
+        }
+    }
+}
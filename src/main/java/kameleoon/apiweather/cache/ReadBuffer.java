@@ -0,0 +1,77 @@
+package kameleoon.apiweather.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Набор кольцевых буферов, выбираемых по потоку: конкурирующие читатели пишут
+// в разные полосы и не делят между собой ни блокировку, ни счётчик
+class ReadBuffer<K> {
+
+    private static final int STRIPE_SIZE = 16;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    private final Stripe<K>[] stripes;
+    private final int stripeMask;
+
+    ReadBuffer() {
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Stripe<K>[] allocated = new Stripe[count];
+        this.stripes = allocated;
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        this.stripeMask = count - 1;
+    }
+
+    // возвращает true, когда полоса заполнена наполовину и её пора разобрать
+    boolean offer(K key) {
+        Stripe<K> stripe = stripes[(int) mix(Thread.currentThread().threadId()) & stripeMask];
+        long head = stripe.readCounter;
+        long tail = stripe.writeCounter.get();
+        long size = tail - head;
+        if (size >= STRIPE_SIZE) {
+            return true;
+        }
+        if (stripe.writeCounter.compareAndSet(tail, tail + 1)) {
+            stripe.buffer.lazySet((int) (tail & STRIPE_MASK), key);
+            return size + 1 >= STRIPE_SIZE / 2;
+        }
+        return false;
+    }
+
+    // вызывается только под блокировкой владельца
+    void drainTo(Consumer<K> consumer) {
+        for (Stripe<K> stripe : stripes) {
+            long head = stripe.readCounter;
+            long tail = stripe.writeCounter.get();
+            while (head < tail) {
+                int index = (int) (head & STRIPE_MASK);
+                K key = stripe.buffer.get(index);
+                if (key == null) {
+                    break;
+                }
+                stripe.buffer.lazySet(index, null);
+                consumer.accept(key);
+                head++;
+            }
+            stripe.readCounter = head;
+        }
+    }
+
+    void clear() {
+        drainTo(key -> { });
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        return x ^ (x >>> 33);
+    }
+
+    private static final class Stripe<K> {
+        final AtomicReferenceArray<K> buffer = new AtomicReferenceArray<>(STRIPE_SIZE);
+        final AtomicLong writeCounter = new AtomicLong();
+        volatile long readCounter;
+    }
+}
@@ -0,0 +1,79 @@
+package kameleoon.apiweather.cache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// Небольшое LRU-окно (~1%) для новых ключей и основной LRU-сегмент, в который
+// кандидат из окна допускается, только если по скетчу он встречался чаще жертвы
+public class WindowTinyLfuPolicy<K> implements EvictionPolicy<K> {
+
+    public static final String NAME = "w-tinylfu";
+
+    private final int windowMaximum;
+    private final int mainMaximum;
+    private final LinkedHashMap<K, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Boolean> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch<K> sketch;
+
+    public WindowTinyLfuPolicy(int maximumSize) {
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.mainMaximum = maximumSize - windowMaximum;
+        this.sketch = new FrequencySketch<>(maximumSize);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        if (window.get(key) != null || main.get(key) != null) {
+            sketch.increment(key);
+        }
+    }
+
+    @Override
+    public List<K> recordWrite(K key) {
+        sketch.increment(key);
+        if (window.get(key) != null || main.get(key) != null) {
+            return List.of();
+        }
+        window.put(key, Boolean.TRUE);
+        if (window.size() <= windowMaximum) {
+            return List.of();
+        }
+
+        K candidate = window.keySet().iterator().next();
+        window.remove(candidate);
+        if (main.size() < mainMaximum) {
+            main.put(candidate, Boolean.TRUE);
+            return List.of();
+        }
+        if (mainMaximum == 0) {
+            return List.of(candidate);
+        }
+
+        K victim = main.keySet().iterator().next();
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            main.remove(victim);
+            main.put(candidate, Boolean.TRUE);
+            return List.of(victim);
+        }
+        return List.of(candidate);
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        if (window.remove(key) == null) {
+            main.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        main.clear();
+        sketch.clear();
+    }
+}
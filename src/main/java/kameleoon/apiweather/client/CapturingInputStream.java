@@ -0,0 +1,52 @@
+package kameleoon.apiweather.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// Копирует прочитанные байты, чтобы потоковый разбор ответа не мешал сохранить его исходный JSON
+public final class CapturingInputStream extends FilterInputStream {
+
+    private final ByteArrayOutputStream copy = new ByteArrayOutputStream(1024);
+
+    public CapturingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            copy.write(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            copy.write(buffer, offset, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // пропущенные байты тоже должны попасть в копию
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        int read = read(buffer, 0, buffer.length);
+        return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    public String captured() {
+        return copy.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,172 @@
+package kameleoon.apiweather.client;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Автомат CLOSED -> OPEN -> HALF_OPEN по скользящему окну последних вызовов OpenWeatherMap.
+// Размыкается, когда доля ошибок или медленных вызовов в окне превышает порог; в OPEN вызовы
+// отклоняются сразу, по истечении open-state-millis пропускается несколько пробных вызовов:
+// все успешны — цепь замыкается, хотя бы один неудачен — снова размыкается
+@Component
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final boolean enabled;
+    private final byte[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final double slowCallRateThreshold;
+    private final long openStateNanos;
+    private final int halfOpenProbes;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+    private int windowSlowCalls;
+    private int probesPermitted;
+    private int probesSucceeded;
+    private long rejectedCalls;
+    private long openedCount;
+
+    public CircuitBreaker(@Value("${openweathermap.api.circuit-breaker.enabled:true}") boolean enabled,
+                          @Value("${openweathermap.api.circuit-breaker.window-size:20}") int windowSize,
+                          @Value("${openweathermap.api.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                          @Value("${openweathermap.api.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+                          @Value("${openweathermap.api.circuit-breaker.slow-call-millis:3000}") long slowCallMillis,
+                          @Value("${openweathermap.api.circuit-breaker.slow-call-rate-threshold:0.8}") double slowCallRateThreshold,
+                          @Value("${openweathermap.api.circuit-breaker.open-state-millis:30000}") long openStateMillis,
+                          @Value("${openweathermap.api.circuit-breaker.half-open-probes:3}") int halfOpenProbes) {
+        if (windowSize <= 0 || minimumCalls <= 0 || minimumCalls > windowSize || halfOpenProbes <= 0) {
+            throw new IllegalArgumentException("Invalid circuit breaker window configuration");
+        }
+        this.enabled = enabled;
+        this.window = new byte[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openStateNanos = TimeUnit.MILLISECONDS.toNanos(openStateMillis);
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+    public static CircuitBreaker disabled() {
+        return new CircuitBreaker(false, 1, 1, 1, Long.MAX_VALUE / 1_000_000, 1, 0, 1);
+    }
+
+    // false — вызов делать нельзя; если true, результат обязательно сообщается через onResult
+    public synchronized boolean tryAcquirePermission() {
+        if (!enabled) {
+            return true;
+        }
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openStateNanos) {
+            state = State.HALF_OPEN;
+            probesPermitted = 0;
+            probesSucceeded = 0;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && probesPermitted < halfOpenProbes) {
+            probesPermitted++;
+            return true;
+        }
+        rejectedCalls++;
+        return false;
+    }
+
+    public synchronized void onResult(long durationNanos, boolean failed) {
+        if (!enabled) {
+            return;
+        }
+        boolean slow = durationNanos >= slowCallNanos;
+        if (state == State.HALF_OPEN) {
+            if (failed || slow) {
+                open();
+            } else if (++probesSucceeded >= halfOpenProbes) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // вызов, начатый до размыкания
+            return;
+        }
+        record((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+        if (windowCount >= minimumCalls
+                && (windowFailures >= failureRateThreshold * windowCount
+                || windowSlowCalls >= slowCallRateThreshold * windowCount)) {
+            open();
+        }
+    }
+
+    // вызов прерван без ответа OpenWeatherMap: он не говорит ни об успехе, ни о сбое,
+    // и пробное разрешение в HALF_OPEN возвращается
+    public synchronized void releasePermission() {
+        if (enabled && state == State.HALF_OPEN && probesPermitted > 0) {
+            probesPermitted--;
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("state", state.name());
+        stats.put("windowCalls", windowCount);
+        stats.put("failureRate", windowCount == 0 ? 0.0 : (double) windowFailures / windowCount);
+        stats.put("slowCallRate", windowCount == 0 ? 0.0 : (double) windowSlowCalls / windowCount);
+        stats.put("rejectedCalls", rejectedCalls);
+        stats.put("openedCount", openedCount);
+        return stats;
+    }
+
+    private void record(byte outcome) {
+        if (windowCount == window.length) {
+            byte evicted = window[windowIndex];
+            windowFailures -= evicted & FAILED;
+            windowSlowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = outcome;
+        windowFailures += outcome & FAILED;
+        windowSlowCalls += (outcome & SLOW) >> 1;
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        openedCount++;
+        resetWindow();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        windowSlowCalls = 0;
+    }
+}
@@ -0,0 +1,50 @@
+package kameleoon.apiweather.client;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Ответ group?id= — {"cnt": N, "list": [...]}, элементы списка разбираются потоково по одному.
+// Для кэша второго уровня элемент читается в дерево, чтобы сохранить его исходный JSON
+public final class GroupResponseParser {
+
+    // json — null, если исходный JSON не нужен
+    public record Element<T>(T weather, String json) {
+    }
+
+    private GroupResponseParser() {
+    }
+
+    public static <T> List<Element<T>> parse(ObjectMapper objectMapper, ObjectReader elementReader, InputStream body,
+                                             boolean keepJson, int expectedSize) throws IOException {
+        List<Element<T>> result = new ArrayList<>(expectedSize);
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Unexpected group API response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() != JsonToken.START_ARRAY || !"list".equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    if (keepJson) {
+                        JsonNode node = objectMapper.readTree(parser);
+                        result.add(new Element<>(elementReader.readValue(node), node.toString()));
+                    } else {
+                        result.add(new Element<>(elementReader.readValue(parser), null));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+package kameleoon.apiweather.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Гистограмма задержек с корзинами по степеням двойки миллисекунд (1, 2, 4 ... 65536+).
+// Перцентили приблизительные: возвращается верхняя граница корзины
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 18;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMillis = new LongAdder();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long millis) {
+        long value = Math.max(0, millis);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+        buckets[bucket].increment();
+        count.increment();
+        totalMillis.add(value);
+        maxMillis.accumulateAndGet(value, Math::max);
+    }
+
+    public long percentile(double quantile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxMillis.get());
+            }
+        }
+        return maxMillis.get();
+    }
+
+    public Map<String, Object> toMap() {
+        long total = count.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", total);
+        stats.put("averageMillis", total == 0 ? 0.0 : (double) totalMillis.sum() / total);
+        stats.put("p50Millis", percentile(0.50));
+        stats.put("p90Millis", percentile(0.90));
+        stats.put("p99Millis", percentile(0.99));
+        stats.put("maxMillis", maxMillis.get());
+        return stats;
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,202 @@
+package kameleoon.apiweather.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.util.UriComponentsBuilder;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Общий клиент OpenWeatherMap для обоих сервисов: JDK HttpClient с пулом keep-alive соединений HTTP/1.1,
+// таймаутами, ограничением одновременных запросов на хост, bulkhead и circuit breaker. Ошибки переводятся
+// в те же исключения, что бросал RestTemplate, поэтому обработчики в ControllerAdvice не меняются
+@Component
+public class OpenWeatherMapClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenWeatherMapClient.class);
+
+    // тело ответа читается внутри обработчика, пока держится разрешение на соединение
+    @FunctionalInterface
+    public interface ResponseHandler<T> {
+        T handle(int status, InputStream body) throws IOException;
+    }
+
+    private final HttpClient httpClient;
+    private final ExecutorService virtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Duration readTimeout;
+    private final int maxConnectionsPerHost;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final int bulkheadMaxConcurrent;
+    private final Semaphore bulkhead;
+    private final long bulkheadMaxWaitMillis;
+    private final CircuitBreaker circuitBreaker;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder clientErrors = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+    private final LongAdder ioErrors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder bulkheadRejections = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // bulkhead по умолчанию больше предела maxConcurrency у /api/sdk/multiple (64): полный fan-out одного запроса
+    // не должен упираться в него при нормальной задержке OpenWeatherMap
+    public OpenWeatherMapClient(@Value("${openweathermap.api.connect-timeout-millis:2000}") long connectTimeoutMillis,
+                                @Value("${openweathermap.api.read-timeout-millis:5000}") long readTimeoutMillis,
+                                @Value("${openweathermap.api.max-connections-per-host:32}") int maxConnectionsPerHost,
+                                @Value("${openweathermap.api.bulkhead.max-concurrent:128}") int bulkheadMaxConcurrent,
+                                @Value("${openweathermap.api.bulkhead.max-wait-millis:100}") long bulkheadMaxWaitMillis,
+                                CircuitBreaker circuitBreaker) {
+        this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.bulkheadMaxConcurrent = bulkheadMaxConcurrent;
+        this.bulkhead = new Semaphore(bulkheadMaxConcurrent);
+        this.bulkheadMaxWaitMillis = bulkheadMaxWaitMillis;
+        this.circuitBreaker = circuitBreaker;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(virtualThreadExecutor)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        virtualThreadExecutor.shutdownNow();
+    }
+
+    public <T> T get(String url, ResponseHandler<T> handler) {
+        URI uri = UriComponentsBuilder.fromUriString(url).build().encode().toUri();
+        // bulkhead: при деградации OpenWeatherMap лишние вызовы отклоняются сразу, а не занимают потоки Tomcat
+        if (!acquire(bulkhead, bulkheadMaxWaitMillis)) {
+            bulkheadRejections.increment();
+            throw new UpstreamUnavailableException("Too many concurrent calls to weather API");
+        }
+        try {
+            Semaphore permits = hostPermits.computeIfAbsent(uri.getHost() + ":" + uri.getPort(),
+                    host -> new Semaphore(maxConnectionsPerHost));
+            if (!acquire(permits, readTimeout.toMillis())) {
+                timeouts.increment();
+                throw new ResourceAccessException("Too many concurrent requests to " + uri.getHost());
+            }
+            try {
+                if (!circuitBreaker.tryAcquirePermission()) {
+                    throw new UpstreamUnavailableException("Circuit breaker is open for weather API");
+                }
+                return call(uri, handler);
+            } finally {
+                permits.release();
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    // Ошибкой для circuit breaker считаются сбои соединения, таймауты и 5xx; ответы 4xx и ошибки
+    // разбора в обработчике говорят о запросе, а не о состоянии OpenWeatherMap. 429 — это квота
+    // одного ключа: breaker общий для всех ключей, а квоты держит UpstreamRateLimiter
+    private <T> T call(URI uri, ResponseHandler<T> handler) {
+        requests.increment();
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        boolean failed = false;
+        boolean interrupted = false;
+        try {
+            HttpRequest request = HttpRequest.newBuilder(uri).timeout(readTimeout).GET().build();
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                int status = response.statusCode();
+                if (status >= 400) {
+                    failed = status >= 500;
+                    throw statusException(status, body.readAllBytes());
+                }
+                return handler.handle(status, body);
+            }
+        } catch (HttpTimeoutException e) {
+            failed = true;
+            timeouts.increment();
+            throw new ResourceAccessException("Timed out calling weather API: " + e.getMessage(), e);
+        } catch (IOException e) {
+            failed = true;
+            ioErrors.increment();
+            throw new ResourceAccessException("I/O error calling weather API: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            interrupted = true;
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Interrupted while calling weather API");
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            latency.record(TimeUnit.NANOSECONDS.toMillis(elapsed));
+            inFlight.decrementAndGet();
+            if (interrupted) {
+                circuitBreaker.releasePermission();
+            } else {
+                circuitBreaker.onResult(elapsed, failed);
+            }
+        }
+    }
+
+    private static boolean acquire(Semaphore semaphore, long maxWaitMillis) {
+        try {
+            return semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.sum());
+        stats.put("inFlight", inFlight.get());
+        stats.put("clientErrors", clientErrors.sum());
+        stats.put("serverErrors", serverErrors.sum());
+        stats.put("ioErrors", ioErrors.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("latency", latency.toMap());
+        stats.put("bulkhead", Map.of(
+                "maxConcurrent", bulkheadMaxConcurrent,
+                "available", bulkhead.availablePermits(),
+                "rejected", bulkheadRejections.sum()));
+        stats.put("circuitBreaker", circuitBreaker.getStats());
+        return stats;
+    }
+
+    private RestClientException statusException(int status, byte[] body) {
+        HttpStatusCode statusCode = HttpStatusCode.valueOf(status);
+        String statusText = "HTTP " + status;
+        logger.debug("Weather API responded with {}: {}", status, new String(body, StandardCharsets.UTF_8));
+        if (statusCode.is4xxClientError()) {
+            clientErrors.increment();
+            return HttpClientErrorException.create(statusCode, statusText, HttpHeaders.EMPTY, body, StandardCharsets.UTF_8);
+        }
+        serverErrors.increment();
+        return HttpServerErrorException.create(statusCode, statusText, HttpHeaders.EMPTY, body, StandardCharsets.UTF_8);
+    }
+}
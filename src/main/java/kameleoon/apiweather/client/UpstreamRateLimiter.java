@@ -0,0 +1,146 @@
+package kameleoon.apiweather.client;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Token bucket на каждый API-ключ OpenWeatherMap, общий для REST и SDK: квота считается по ключу, а не по сервису.
+// Часть ёмкости зарезервирована за запросами пользователей — фоновые обновления её не трогают.
+// Запрос пользователя может подождать токен до max-wait-millis, фоновое обновление не ждёт
+@Component
+public class UpstreamRateLimiter {
+
+    public enum Priority {
+        ON_DEMAND,
+        BACKGROUND
+    }
+
+    private final boolean enabled;
+    private final int callsPerMinute;
+    private final double capacity;
+    private final double tokensPerNano;
+    private final double onDemandReserve;
+    private final long maxWaitNanos;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final class Bucket {
+        private double tokens = capacity;
+        private long refilledAt = System.nanoTime();
+        private long granted;
+        private long queuedOnDemand;
+        private long throttledOnDemand;
+        private long deferredBackground;
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+        }
+    }
+
+    public UpstreamRateLimiter(@Value("${weather.rate-limit.enabled:true}") boolean enabled,
+                               @Value("${weather.rate-limit.calls-per-minute:60}") int callsPerMinute,
+                               @Value("${weather.rate-limit.burst:60}") int burst,
+                               @Value("${weather.rate-limit.on-demand-reserve:0.2}") double onDemandReserveRatio,
+                               @Value("${weather.rate-limit.max-wait-millis:500}") long maxWaitMillis) {
+        if (callsPerMinute <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate limit and burst must be positive");
+        }
+        if (onDemandReserveRatio < 0 || onDemandReserveRatio >= 1) {
+            throw new IllegalArgumentException("On-demand reserve must be in [0, 1)");
+        }
+        this.enabled = enabled;
+        this.callsPerMinute = callsPerMinute;
+        this.capacity = burst;
+        this.tokensPerNano = callsPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.onDemandReserve = Math.floor(burst * onDemandReserveRatio);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    // false — токена нет: фоновое обновление стоит отложить, запросу пользователя — отдать устаревшие данные
+    public boolean tryAcquire(String apiKey, Priority priority) {
+        if (!enabled) {
+            return true;
+        }
+        Bucket bucket = buckets.computeIfAbsent(apiKey, k -> new Bucket());
+        boolean onDemand = priority == Priority.ON_DEMAND;
+        double floor = onDemand ? 0 : onDemandReserve;
+        long deadline = System.nanoTime() + (onDemand ? maxWaitNanos : 0);
+        boolean queued = false;
+        while (true) {
+            long waitNanos;
+            synchronized (bucket) {
+                long now = System.nanoTime();
+                bucket.refill(now);
+                if (bucket.tokens - floor >= 1) {
+                    bucket.tokens -= 1;
+                    bucket.granted++;
+                    return true;
+                }
+                waitNanos = (long) Math.ceil((floor + 1 - bucket.tokens) / tokensPerNano);
+                if (waitNanos > deadline - now) {
+                    if (onDemand) {
+                        bucket.throttledOnDemand++;
+                    } else {
+                        bucket.deferredBackground++;
+                    }
+                    return false;
+                }
+                if (!queued) {
+                    bucket.queuedOnDemand++;
+                    queued = true;
+                }
+            }
+            LockSupport.parkNanos(waitNanos);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+    }
+
+    public Map<String, Object> getStats(String apiKey) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("callsPerMinute", callsPerMinute);
+        stats.put("burst", (long) capacity);
+        stats.put("onDemandReserve", (long) onDemandReserve);
+        Bucket bucket = buckets.get(apiKey);
+        if (bucket == null) {
+            stats.put("remainingTokens", (long) capacity);
+            return stats;
+        }
+        synchronized (bucket) {
+            bucket.refill(System.nanoTime());
+            stats.put("remainingTokens", (long) bucket.tokens);
+            stats.put("granted", bucket.granted);
+            stats.put("queuedOnDemand", bucket.queuedOnDemand);
+            stats.put("throttledOnDemand", bucket.throttledOnDemand);
+            stats.put("deferredBackground", bucket.deferredBackground);
+        }
+        return stats;
+    }
+
+    // Общая статистика отдаётся без авторизации, поэтому только суммарно: сами ключи — учётные данные клиентов
+    public Map<String, Object> getStats() {
+        long remaining = 0;
+        long throttled = 0;
+        for (Bucket bucket : buckets.values()) {
+            synchronized (bucket) {
+                bucket.refill(System.nanoTime());
+                remaining += (long) bucket.tokens;
+                throttled += bucket.throttledOnDemand;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("callsPerMinute", callsPerMinute);
+        stats.put("burst", (long) capacity);
+        stats.put("apiKeys", buckets.size());
+        stats.put("remainingTokensTotal", remaining);
+        stats.put("throttledOnDemand", throttled);
+        return stats;
+    }
+}
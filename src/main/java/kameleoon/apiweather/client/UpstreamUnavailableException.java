@@ -0,0 +1,11 @@
+package kameleoon.apiweather.client;
+
+import org.springframework.web.client.ResourceAccessException;
+
+// Вызов не делался: цепь разомкнута или все места в bulkhead заняты. Наследует ResourceAccessException,
+// поэтому обработчики ошибок отвечают на него так же, как на недоступность OpenWeatherMap
+public class UpstreamUnavailableException extends ResourceAccessException {
+    public UpstreamUnavailableException(String message) {
+        super(message);
+    }
+}
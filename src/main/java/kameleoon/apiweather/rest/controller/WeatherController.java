@@ -9,6 +9,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api")
@@ -62,6 +63,16 @@ public class WeatherController {
         return ResponseEntity.ok(weatherService.getCachedCities());
     }
 
+    @GetMapping("/key-cache-stats")
+    public ResponseEntity<Map<String, Object>> getKeyCacheStats() {
+        return ResponseEntity.ok(apiKeyService.getKeyCacheStats());
+    }
+
+    @GetMapping("/upstream-stats")
+    public ResponseEntity<Map<String, Object>> getUpstreamStats() {
+        return ResponseEntity.ok(weatherService.getUpstreamStats());
+    }
+
     @GetMapping("/{cityName}")
     public ResponseEntity<String> handleMissingApiKey(@PathVariable String cityName) {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -1,5 +1,6 @@
 package kameleoon.apiweather.rest.dto;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class WeatherResponseDto {
     private Coord coord;
@@ -15,6 +16,9 @@ public class WeatherResponseDto {
     private int id;
     private String name;
     private int cod;
+    // у ответов с ошибкой cod != 200 и текст в message; наружу не сериализуется
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private String message;
 
     public static class Coord {
         private double lon;
@@ -129,4 +133,6 @@ public class WeatherResponseDto {
     public void setName(String name) { this.name = name; }
     public int getCod() { return cod; }
     public void setCod(int cod) { this.cod = cod; }
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
 }
\ No newline at end of file
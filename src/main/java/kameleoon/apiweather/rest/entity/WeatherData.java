@@ -1,23 +1,28 @@
-// Этот класс можно использовать для хранения кэшированных данных в БД,
-// но в текущей реализации кэш хранится в памяти Map.
-// Оставляю для потенциального расширения
+// Второй уровень кэша погоды: ответ OpenWeatherMap по городу переживает рестарт
+// и виден всем репликам. Одна строка на город, обновляется на месте
 package kameleoon.apiweather.rest.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "cached_weather")
+@Table(name = "cached_weather",
+        uniqueConstraints = @UniqueConstraint(name = "uk_cached_weather_city_name", columnNames = "city_name"),
+        indexes = @Index(name = "idx_cached_weather_city_timestamp", columnList = "city_name, timestamp"))
 public class WeatherData {
 
+    // последовательность вместо IDENTITY, иначе Hibernate не может пакетировать вставки
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cached_weather_seq")
+    @SequenceGenerator(name = "cached_weather_seq", sequenceName = "cached_weather_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "city_name", nullable = false)
     private String cityName;
 
-    @Lob
+    @JdbcTypeCode(SqlTypes.JSON)
     @Column(name = "weather_json", columnDefinition = "jsonb")
     private String weatherJson;
 
@@ -43,4 +48,4 @@ public class WeatherData {
 
     public LocalDateTime getTimestamp() { return timestamp; }
     public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
-}
\ No newline at end of file
+}
@@ -0,0 +1,7 @@
+package kameleoon.apiweather.rest.exception;
+
+public class RateLimitExceededException extends CustomException {
+    public RateLimitExceededException(String message) {
+        super(message);
+    }
+}
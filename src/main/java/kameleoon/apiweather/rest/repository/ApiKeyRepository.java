@@ -2,9 +2,14 @@ package kameleoon.apiweather.rest.repository;
 
 import kameleoon.apiweather.rest.entity.ApiKey;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import java.util.List;
 
 @Repository
 public interface ApiKeyRepository extends JpaRepository<ApiKey, String> {
     boolean existsByApiKey(String apiKey);
+
+    @Query("select k.apiKey from ApiKey k")
+    List<String> findAllApiKeys();
 }
\ No newline at end of file
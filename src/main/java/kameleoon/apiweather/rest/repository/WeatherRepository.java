@@ -1,12 +1,25 @@
-// если хранить кэш в БД
-/*package kameleoon.apiweather.rest.repository;
-
- import kameleoon.apiweather.rest.entity.WeatherData;
- import org.springframework.data.jpa.repository.JpaRepository;
- import org.springframework.stereotype.Repository;
- import java.util.Optional;
-
- @Repository
- public interface WeatherRepository extends JpaRepository<WeatherData, Long> {
-     Optional<WeatherData> findByCityName(String cityName);
- }*/
\ No newline at end of file
+package kameleoon.apiweather.rest.repository;
+
+import kameleoon.apiweather.rest.entity.WeatherData;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface WeatherRepository extends JpaRepository<WeatherData, Long> {
+    Optional<WeatherData> findByCityNameAndTimestampAfter(String cityName, LocalDateTime cutoff);
+
+    List<WeatherData> findByCityNameIn(Collection<String> cityNames);
+
+    @Modifying
+    @Transactional
+    @Query("delete from WeatherData w where w.timestamp < :cutoff")
+    int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff);
+}
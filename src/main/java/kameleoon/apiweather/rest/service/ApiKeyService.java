@@ -3,9 +3,12 @@ package kameleoon.apiweather.rest.service;
 import kameleoon.apiweather.rest.entity.ApiKey;
 import kameleoon.apiweather.rest.exception.ApiKeyNotFoundException;
 import kameleoon.apiweather.rest.repository.ApiKeyRepository;
+import kameleoon.apiweather.cache.ApiKeyFilter;
+import kameleoon.apiweather.cache.ApiKeyValidityCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import java.util.Map;
 
 @Service
 public class ApiKeyService {
@@ -13,9 +16,14 @@ public class ApiKeyService {
     private static final Logger logger = LoggerFactory.getLogger(ApiKeyService.class);
 
     private final ApiKeyRepository apiKeyRepository;
+    private final ApiKeyValidityCache validityCache;
+    private final ApiKeyFilter apiKeyFilter;
 
-    public ApiKeyService(ApiKeyRepository apiKeyRepository) {
+    public ApiKeyService(ApiKeyRepository apiKeyRepository, ApiKeyValidityCache validityCache,
+                            ApiKeyFilter apiKeyFilter) {
         this.apiKeyRepository = apiKeyRepository;
+        this.validityCache = validityCache;
+        this.apiKeyFilter = apiKeyFilter;
     }
 
     public String saveApiKey(String apiKey) {
@@ -25,6 +33,8 @@ public class ApiKeyService {
         }
         ApiKey newKey = new ApiKey(apiKey);
         apiKeyRepository.save(newKey);
+        validityCache.invalidate(apiKey);
+        apiKeyFilter.add(apiKey);
         logger.info("API Key saved successfully: {}", apiKey);
         return "API Key saved successfully.";
     }
@@ -35,12 +45,14 @@ public class ApiKeyService {
             throw new ApiKeyNotFoundException("API Key not found in the database.");
         }
         apiKeyRepository.deleteById(apiKey);
+        validityCache.invalidate(apiKey);
+        apiKeyFilter.remove(apiKey);
         logger.info("API Key deleted successfully: {}", apiKey);
         return "API Key deleted successfully.";
     }
 
     public String getApiKey(String apiKey) {
-        if (!apiKeyRepository.existsByApiKey(apiKey)) {
+        if (!isValidApiKey(apiKey)) {
             logger.warn("Attempt to retrieve a non-existent API key: {}", apiKey);
             throw new ApiKeyNotFoundException("API Key not found in the database.");
         }
@@ -48,7 +60,23 @@ public class ApiKeyService {
         return apiKey;
     }
 
+    public Map<String, Object> getKeyCacheStats() {
+        return Map.of(
+                "validityCache", validityCache.getStats(),
+                "keyFilter", apiKeyFilter.getStats()
+        );
+    }
+
     public boolean isValidApiKey(String apiKey) {
-        return apiKeyRepository.existsByApiKey(apiKey);
+        if (!apiKeyFilter.mightContain(apiKey)) {
+            return false;
+        }
+        return validityCache.isValid(apiKey, key -> {
+            boolean exists = apiKeyRepository.existsByApiKey(key);
+            if (!exists) {
+                apiKeyFilter.recordFalsePositive();
+            }
+            return exists;
+        });
     }
 }
\ No newline at end of file
@@ -1,59 +1,132 @@
 package kameleoon.apiweather.rest.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import kameleoon.apiweather.client.CapturingInputStream;
+import kameleoon.apiweather.client.GroupResponseParser;
+import kameleoon.apiweather.client.OpenWeatherMapClient;
+import kameleoon.apiweather.client.UpstreamRateLimiter;
+import kameleoon.apiweather.cache.BoundedCache;
+import kameleoon.apiweather.cache.CacheSnapshot;
+import kameleoon.apiweather.cache.CityNameCanonicalizer;
+import kameleoon.apiweather.cache.CityNotFoundCache;
+import kameleoon.apiweather.cache.LruPolicy;
+import kameleoon.apiweather.cache.PersistentWeatherCache;
+import kameleoon.apiweather.cache.PollingEngine;
+import kameleoon.apiweather.cache.SingleFlight;
 import kameleoon.apiweather.rest.dto.WeatherResponseDto;
 import kameleoon.apiweather.rest.exception.ApiKeyNotFoundException;
 import kameleoon.apiweather.rest.exception.CityNotFoundException;
 import kameleoon.apiweather.rest.exception.CustomException;
+import kameleoon.apiweather.rest.exception.RateLimitExceededException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 @Service
 public class WeatherService {
 
     private static final Logger logger = LoggerFactory.getLogger(WeatherService.class);
     private static final int CACHE_SIZE_LIMIT = 10;
-    private static final long CACHE_VALIDITY_MINUTES = 1;
+    private static final String POLLING_GROUP = "rest-api";
+    private static final String SNAPSHOT_GROUP = "rest-api-snapshot";
+    private static final String SNAPSHOT_FILE = "rest-cache.snapshot";
+    private static final String GROUP_REFRESH_TASK = "@group-refresh:";
     private final ApiKeyService apiKeyService;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final PollingEngine pollingEngine;
+    private final PersistentWeatherCache persistentCache;
+    private final CityNameCanonicalizer cityNames;
+    private final CityNotFoundCache cityNotFound;
+    private final OpenWeatherMapClient upstreamClient;
+    private final UpstreamRateLimiter rateLimiter;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private ScheduledExecutorService pollingScheduler;
+    private final ObjectReader weatherReader = objectMapper.readerFor(WeatherResponseDto.class);
+    // элементы group и записи кэша второго уровня, общего с SDK, содержат поля, которых нет в DTO
+    // (sys.timezone, rain, snow и др.)
+    private final ObjectReader lenientWeatherReader = weatherReader.without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
     private volatile boolean pollingModeActive = false;
 
     @Value("${openweathermap.api.url}")
     private String weatherApiUrl;
 
-    private final Map<String, CacheEntry> cityCache = Collections.synchronizedMap(
-            new LinkedHashMap<>(16, 0.75f, true) {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
-                    return size() > CACHE_SIZE_LIMIT;
-                }
-            }
-    );
+    @Value("${weather.cache.ttl-millis:60000}")
+    private long cacheTtlMillis = 60000;
+
+    @Value("${weather.polling.jitter-millis:5000}")
+    private long refreshJitterMillis = 5000;
+
+    // пустое значение отключает group-запросы, каждый город обновляется отдельно
+    @Value("${openweathermap.api.group-url:}")
+    private String groupApiUrl;
+
+    @Value("${weather.polling.batch-size:20}")
+    private int refreshBatchSize = 20;
+
+    @Value("${weather.polling.batch-window-millis:500}")
+    private long refreshBatchWindowMillis = 500;
+
+    // пустое значение отключает снимки
+    @Value("${weather.snapshot.directory:}")
+    private String snapshotDirectory;
+
+    @Value("${weather.snapshot.interval-millis:30000}")
+    private long snapshotIntervalMillis = 30000;
+
+    private final BoundedCache<String, CacheEntry> cityCache = BoundedCache.create(CACHE_SIZE_LIMIT, LruPolicy.NAME);
+
+    private final SingleFlight<LoadKey, WeatherResponseDto> inFlightLoads = new SingleFlight<>();
+
+    private record LoadKey(String apiKey, String cityName) {
+    }
 
-    public WeatherService(ApiKeyService apiKeyService) {
+    // города ключа, ждущие group-запроса; scheduled — задача обновления уже поставлена
+    private record PendingRefreshes(Set<String> cities, AtomicBoolean scheduled) {
+    }
+
+    private final Map<String, PendingRefreshes> pendingRefreshes = new ConcurrentHashMap<>();
+    private final LongAdder groupRefreshCalls = new LongAdder();
+    private final LongAdder groupRefreshedCities = new LongAdder();
+
+    // json — null, если кэш второго уровня выключен
+    private record Fetched(WeatherResponseDto weather, String json) {
+    }
+
+    public WeatherService(ApiKeyService apiKeyService, PollingEngine pollingEngine,
+                          PersistentWeatherCache persistentCache, CityNameCanonicalizer cityNames,
+                          CityNotFoundCache cityNotFound, OpenWeatherMapClient upstreamClient,
+                          UpstreamRateLimiter rateLimiter) {
         this.apiKeyService = apiKeyService;
+        this.pollingEngine = pollingEngine;
+        this.persistentCache = persistentCache;
+        this.cityNames = cityNames;
+        this.cityNotFound = cityNotFound;
+        this.upstreamClient = upstreamClient;
+        this.rateLimiter = rateLimiter;
     }
 
+    // data разделяется между всеми читателями кэша и не должен изменяться
     private static class CacheEntry {
-        final String data;
-        final LocalDateTime timestamp;
+        final WeatherResponseDto data;
+        final long timestamp;
         final String originalApiKey;
 
-        CacheEntry(String data, LocalDateTime timestamp, String originalApiKey) {
+        CacheEntry(WeatherResponseDto data, long timestamp, String originalApiKey) {
             this.data = data;
             this.timestamp = timestamp;
             this.originalApiKey = originalApiKey;
@@ -61,29 +134,67 @@ public class WeatherService {
     }
 
     @PostConstruct
-    public void init() {
-        pollingScheduler = Executors.newSingleThreadScheduledExecutor();
+    public void restoreSnapshot() {
+        if (snapshotDirectory == null || snapshotDirectory.isBlank()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            List<CacheSnapshot.Entry> entries = new ArrayList<>(CacheSnapshot.read(snapshotPath()));
+            entries.sort(Comparator.comparingLong(CacheSnapshot.Entry::timestamp));
+            int restored = 0;
+            for (CacheSnapshot.Entry entry : entries) {
+                if (System.currentTimeMillis() - entry.timestamp() >= cacheTtlMillis) {
+                    continue;
+                }
+                WeatherResponseDto weather = objectMapper.readValue(entry.payload(), WeatherResponseDto.class);
+                cityCache.put(entry.key(), new CacheEntry(weather, entry.timestamp(), entry.originalApiKey()));
+                restored++;
+            }
+            logger.info("Restored {} cached cities from snapshot in {} ms", restored,
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            logger.warn("Failed to restore cache snapshot: {}", e.getMessage());
+        }
+        pollingEngine.schedule(SNAPSHOT_GROUP, SNAPSHOT_FILE, snapshotIntervalMillis, snapshotIntervalMillis,
+                this::writeSnapshot);
     }
 
     @PreDestroy
     public void shutdown() {
-        if (pollingScheduler != null) {
-            pollingScheduler.shutdown();
-            try {
-                if (!pollingScheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                    pollingScheduler.shutdownNow();
+        pollingEngine.cancelGroup(POLLING_GROUP);
+        pollingEngine.cancelGroup(SNAPSHOT_GROUP);
+        writeSnapshot();
+    }
+
+    private void writeSnapshot() {
+        if (snapshotDirectory == null || snapshotDirectory.isBlank()) {
+            return;
+        }
+        List<CacheSnapshot.Entry> entries = new ArrayList<>();
+        try {
+            for (String cityName : cityCache.keys()) {
+                CacheEntry entry = cityCache.peek(cityName);
+                if (entry != null) {
+                    entries.add(new CacheSnapshot.Entry(POLLING_GROUP, cityName, entry.originalApiKey, entry.timestamp,
+                            objectMapper.writeValueAsBytes(entry.data)));
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                pollingScheduler.shutdownNow();
             }
+            CacheSnapshot.write(snapshotPath(), entries);
+        } catch (IOException e) {
+            logger.warn("Failed to write cache snapshot: {}", e.getMessage());
         }
     }
 
-    public WeatherResponseDto getWeatherForCity(String cityName, String apiKey, String mode) {
+    private Path snapshotPath() {
+        return Path.of(snapshotDirectory, SNAPSHOT_FILE);
+    }
+
+    public WeatherResponseDto getWeatherForCity(String requestedCityName, String apiKey, String mode) {
         if (!apiKeyService.isValidApiKey(apiKey)) {
             throw new ApiKeyNotFoundException("API Key not found in the database. Please save the key first.");
         }
+        String cityName = cityNames.resolve(requestedCityName);
 
         boolean isPollingRequest = "polling".equalsIgnoreCase(mode);
         if (isPollingRequest && !pollingModeActive) {
@@ -95,106 +206,246 @@ public class WeatherService {
             }
         }
 
-        CacheEntry cachedEntry;
-        synchronized (cityCache) {
-            cachedEntry = cityCache.get(cityName);
+        CacheEntry cachedEntry = cityCache.get(cityName);
+        if (cachedEntry != null && isFresh(cachedEntry)) {
+            return cachedEntry.data;
         }
 
-        if (cachedEntry != null) {
-            LocalDateTime now = LocalDateTime.now();
-            long minutesSinceUpdate = ChronoUnit.MINUTES.between(cachedEntry.timestamp, now);
-            if (minutesSinceUpdate < CACHE_VALIDITY_MINUTES) {
-                try {
-                    return objectMapper.readValue(cachedEntry.data, WeatherResponseDto.class);
-                } catch (Exception e) {
-                    logger.warn("Cached data for {} is corrupted: {}", cityName, e.getMessage());
-                }
-            } else {
-                synchronized (cityCache) {
-                    cityCache.remove(cityName);
-                }
+        return inFlightLoads.execute(new LoadKey(apiKey, cityName), () -> loadIntoCache(cityName, apiKey));
+    }
+
+    private WeatherResponseDto loadIntoCache(String cityName, String apiKey) {
+        CacheEntry cachedEntry = cityCache.peek(cityName);
+        if (cachedEntry != null && isFresh(cachedEntry)) {
+            return cachedEntry.data;
+        }
+
+        PersistentWeatherCache.Stored stored = persistentCache.find(cityName, cacheTtlMillis);
+        if (stored != null) {
+            WeatherResponseDto weather = parseWeatherData(stored.json(), cityName);
+            return putIntoCache(cityNames.learn(cityName, weather.getId()), weather, stored.timestamp(), apiKey);
+        }
+
+        try {
+            return fetchIntoCache(cityName, apiKey, UpstreamRateLimiter.Priority.ON_DEMAND);
+        } catch (RateLimitExceededException | ResourceAccessException | HttpServerErrorException e) {
+            if (cachedEntry == null) {
+                throw e;
             }
+            logger.info("Serving stale weather for city {} (apiKey {}): {}", cityName, apiKey, e.getMessage());
+            return cachedEntry.data;
         }
+    }
 
+    private WeatherResponseDto fetchIntoCache(String cityName, String apiKey, UpstreamRateLimiter.Priority priority) {
+        if (cityNotFound.isNotFound(cityName)) {
+            throw new CityNotFoundException("Weather data not found for city: " + cityName);
+        }
+        if (!rateLimiter.tryAcquire(apiKey, priority)) {
+            throw new RateLimitExceededException("OpenWeatherMap call quota exhausted for API key: " + apiKey);
+        }
         // Запрос свежих данных
-        String weatherData = fetchWeatherData(cityName, apiKey);
-        CacheEntry newEntry = new CacheEntry(weatherData, LocalDateTime.now(), apiKey);
+        Fetched fetched = fetchWeatherData(cityName, apiKey);
+        WeatherResponseDto weather = fetched.weather();
+        String slot = cityNames.learn(cityName, weather.getId());
+        long timestamp = System.currentTimeMillis();
+        persistentCache.store(slot, fetched.json(), timestamp);
+        return putIntoCache(slot, weather, timestamp, apiKey);
+    }
 
-        synchronized (cityCache) {
-            cityCache.put(cityName, newEntry);
+    private WeatherResponseDto putIntoCache(String cityName, WeatherResponseDto weather, long timestamp, String apiKey) {
+        CacheEntry entry = new CacheEntry(weather, timestamp, apiKey);
+        cityCache.put(cityName, entry);
+        if (pollingModeActive) {
+            scheduleRefresh(cityName, entry);
         }
+        return weather;
+    }
 
+    private boolean isFresh(CacheEntry entry) {
+        return System.currentTimeMillis() - entry.timestamp < cacheTtlMillis;
+    }
+
+    private WeatherResponseDto parseWeatherData(String weatherData, String cityName) {
         try {
-            return objectMapper.readValue(weatherData, WeatherResponseDto.class);
+            return lenientWeatherReader.readValue(weatherData);
         } catch (Exception e) {
             throw new CustomException("Failed to parse weather data from API for city: " + cityName);
         }
     }
 
-    private String fetchWeatherData(String cityName, String apiKey) {
+    // 404 от OpenWeatherMap запоминается в CityNotFoundCache
+    private Fetched fetchWeatherData(String cityName, String apiKey) {
+        try {
+            return requestWeather(cityName, apiKey);
+        } catch (HttpClientErrorException.NotFound | CityNotFoundException e) {
+            cityNotFound.put(cityName);
+            throw new CityNotFoundException("Weather data not found for city: " + cityName);
+        }
+    }
+
+    private Fetched requestWeather(String cityName, String apiKey) {
         String url = String.format("%s?q=%s&appid=%s&units=metric", weatherApiUrl, cityName, apiKey);
-        String response = restTemplate.getForObject(url, String.class);
-        if (response == null) {
+        boolean keepJson = persistentCache.isEnabled();
+        Fetched fetched = upstreamClient.get(url, (status, body) -> {
+            CapturingInputStream capture = keepJson ? new CapturingInputStream(body) : null;
+            try {
+                WeatherResponseDto weather = weatherReader.readValue(capture != null ? capture : body);
+                return new Fetched(weather, capture != null ? capture.captured() : null);
+            } catch (JsonProcessingException e) {
+                throw new CustomException("Failed to parse API response for city " + cityName + ": " + e.getOriginalMessage());
+            }
+        });
+        WeatherResponseDto weather = fetched.weather();
+        if (weather == null) {
             throw new CustomException("API returned null response for city: " + cityName);
         }
-
-        try {
-            JsonNode responseNode = objectMapper.readTree(response);
-            if (responseNode.has("cod") && responseNode.get("cod").asInt() != 200) {
-                String message = responseNode.path("message").asText("Unknown API Error");
-                if ("city not found".equalsIgnoreCase(message)) {
-                    throw new CityNotFoundException("Weather data not found for city: " + cityName);
-                } else {
-                    throw new CustomException("OpenWeatherMap API error: " + message);
-                }
+        if (weather.getCod() != 0 && weather.getCod() != 200) {
+            String message = weather.getMessage() != null ? weather.getMessage() : "Unknown API Error";
+            if ("city not found".equalsIgnoreCase(message)) {
+                throw new CityNotFoundException("Weather data not found for city: " + cityName);
             }
-            return response;
-        } catch (Exception e) {
-            throw new CustomException("Failed to parse API response for city " + cityName + ": " + e.getMessage());
+            throw new CustomException("OpenWeatherMap API error: " + message);
         }
+        return fetched;
     }
 
     private void startPollingTask() {
-        pollingScheduler.scheduleWithFixedDelay(() -> {
-            LocalDateTime now = LocalDateTime.now();
-            List<Map.Entry<String, String>> citiesAndKeys = new ArrayList<>();
-
-            // 🔒 Безопасное чтение всего кэша
-            synchronized (cityCache) {
-                for (Map.Entry<String, CacheEntry> entry : cityCache.entrySet()) {
-                    String city = entry.getKey();
-                    CacheEntry cacheEntry = entry.getValue();
-                    if (cacheEntry != null) {
-                        long minutesSinceUpdate = ChronoUnit.MINUTES.between(cacheEntry.timestamp, now);
-                        if (minutesSinceUpdate >= CACHE_VALIDITY_MINUTES) {
-                            citiesAndKeys.add(new AbstractMap.SimpleEntry<>(city, cacheEntry.originalApiKey));
-                        }
-                    }
-                }
+        for (String cityName : cityCache.keys()) {
+            CacheEntry entry = cityCache.peek(cityName);
+            if (entry != null) {
+                scheduleRefresh(cityName, entry);
             }
+        }
+    }
 
-            for (Map.Entry<String, String> item : citiesAndKeys) {
-                String cityName = item.getKey();
-                String apiKey = item.getValue();
-                try {
-                    String updatedData = fetchWeatherData(cityName, apiKey);
-                    CacheEntry updatedEntry = new CacheEntry(updatedData, LocalDateTime.now(), apiKey);
+    // Каждая запись обновляется к своему истечению, со случайным сдвигом, чтобы обновления не шли пачкой
+    private void scheduleRefresh(String cityName, CacheEntry entry) {
+        long jitter = refreshJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(refreshJitterMillis) : 0;
+        long delay = entry.timestamp + cacheTtlMillis - jitter - System.currentTimeMillis();
+        pollingEngine.schedule(POLLING_GROUP, cityName, delay, 0, () -> refreshCity(cityName));
+    }
 
-                    synchronized (cityCache) {
-                        cityCache.put(cityName, updatedEntry);
-                    }
+    // При заданном group-url созревшие города с известным id копятся по ключу и обновляются group-запросами
+    private void refreshCity(String cityName) {
+        CacheEntry entry = cityCache.peek(cityName);
+        if (entry == null) {
+            return;
+        }
+        if (groupApiUrl != null && !groupApiUrl.isBlank() && entry.data.getId() != 0) {
+            String apiKey = entry.originalApiKey;
+            PendingRefreshes pending = pendingRefreshes.computeIfAbsent(apiKey,
+                    k -> new PendingRefreshes(ConcurrentHashMap.newKeySet(), new AtomicBoolean()));
+            pending.cities().add(cityName);
+            if (pending.scheduled().compareAndSet(false, true)) {
+                pollingEngine.schedule(POLLING_GROUP, GROUP_REFRESH_TASK + apiKey, refreshBatchWindowMillis, 0,
+                        () -> refreshPendingCities(apiKey));
+            }
+            return;
+        }
+        refreshCitySingly(cityName, entry.originalApiKey);
+    }
 
-                    logger.info("Polling: updated weather for city {}", cityName);
-                } catch (Exception e) {
-                    logger.warn("Polling update failed for city {}: {}", cityName, e.getMessage());
+    private void refreshCitySingly(String cityName, String apiKey) {
+        try {
+            inFlightLoads.execute(new LoadKey(apiKey, cityName),
+                    () -> fetchIntoCache(cityName, apiKey, UpstreamRateLimiter.Priority.BACKGROUND));
+            logger.info("Polling: updated weather for city {}", cityName);
+        } catch (Exception e) {
+            logger.warn("Polling update failed for city {}: {}", cityName, e.getMessage());
+            pollingEngine.schedule(POLLING_GROUP, cityName, cacheTtlMillis, 0, () -> refreshCity(cityName));
+        }
+    }
+
+    private void refreshPendingCities(String apiKey) {
+        PendingRefreshes pending = pendingRefreshes.get(apiKey);
+        if (pending == null) {
+            return;
+        }
+        // флаг снимается до разбора очереди: город, созревший во время обновления, поставит новую задачу
+        pending.scheduled().set(false);
+        Map<Integer, List<String>> slotsById = new LinkedHashMap<>();
+        for (String cityName : List.copyOf(pending.cities())) {
+            pending.cities().remove(cityName);
+            CacheEntry entry = cityCache.peek(cityName);
+            if (entry != null) {
+                slotsById.computeIfAbsent(entry.data.getId(), id -> new ArrayList<>()).add(cityName);
+            }
+        }
+        List<Integer> ids = new ArrayList<>(slotsById.keySet());
+        for (int from = 0; from < ids.size(); from += refreshBatchSize) {
+            refreshGroup(apiKey, ids.subList(from, Math.min(ids.size(), from + refreshBatchSize)), slotsById);
+        }
+    }
+
+    private void refreshGroup(String apiKey, List<Integer> ids, Map<Integer, List<String>> slotsById) {
+        long loadStart = System.nanoTime();
+        List<GroupResponseParser.Element<WeatherResponseDto>> fetched;
+        try {
+            if (!rateLimiter.tryAcquire(apiKey, UpstreamRateLimiter.Priority.BACKGROUND)) {
+                throw new RateLimitExceededException("OpenWeatherMap call quota exhausted for API key: " + apiKey);
+            }
+            fetched = fetchGroup(ids, apiKey);
+        } catch (Exception e) {
+            cityCache.stats().recordLoadFailure(System.nanoTime() - loadStart);
+            logger.warn("Polling group update failed for {} cities: {}", ids.size(), e.getMessage());
+            for (Integer id : ids) {
+                for (String cityName : slotsById.get(id)) {
+                    pollingEngine.schedule(POLLING_GROUP, cityName, cacheTtlMillis, 0, () -> refreshCity(cityName));
                 }
             }
-        }, 0, 1, TimeUnit.MINUTES);
+            return;
+        }
+        cityCache.stats().recordLoadSuccess(System.nanoTime() - loadStart);
+        groupRefreshCalls.increment();
+
+        Set<Integer> missing = new HashSet<>(ids);
+        long timestamp = System.currentTimeMillis();
+        for (GroupResponseParser.Element<WeatherResponseDto> city : fetched) {
+            List<String> slots = slotsById.get(city.weather().getId());
+            if (slots == null || !missing.remove(city.weather().getId())) {
+                continue;
+            }
+            for (String cityName : slots) {
+                persistentCache.store(cityName, city.json(), timestamp);
+                putIntoCache(cityName, city.weather(), timestamp, apiKey);
+                groupRefreshedCities.increment();
+            }
+        }
+        // город, которого нет в ответе, обновляется отдельным запросом
+        for (Integer id : missing) {
+            for (String cityName : slotsById.get(id)) {
+                refreshCitySingly(cityName, apiKey);
+            }
+        }
+        logger.info("Polling: updated {} cities with one group request", ids.size() - missing.size());
+    }
+
+    private List<GroupResponseParser.Element<WeatherResponseDto>> fetchGroup(List<Integer> ids, String apiKey) {
+        String url = String.format("%s?id=%s&appid=%s&units=metric", groupApiUrl,
+                ids.stream().map(String::valueOf).collect(Collectors.joining(",")), apiKey);
+        boolean keepJson = persistentCache.isEnabled();
+        return upstreamClient.get(url, (status, body) -> {
+            try {
+                return GroupResponseParser.parse(objectMapper, lenientWeatherReader, body, keepJson, ids.size());
+            } catch (JsonProcessingException e) {
+                throw new CustomException("Failed to parse group API response: " + e.getOriginalMessage());
+            }
+        });
     }
 
     public List<String> getCachedCities() {
-        synchronized (cityCache) {
-            return new ArrayList<>(cityCache.keySet());
-        }
+        return cityCache.keys();
+    }
+
+    public Map<String, Object> getUpstreamStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(upstreamClient.getStats());
+        stats.put("quota", rateLimiter.getStats());
+        stats.put("cityNotFound", cityNotFound.getStats());
+        stats.put("groupRefresh", Map.of(
+                "enabled", groupApiUrl != null && !groupApiUrl.isBlank(),
+                "calls", groupRefreshCalls.sum(),
+                "refreshedCities", groupRefreshedCities.sum()));
+        return stats;
     }
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package kameleoon.apiweather.sdk;
+
+import kameleoon.apiweather.cache.LruPolicy;
+
+public class SdkConfig {
+
+    public static final int DEFAULT_CACHE_SIZE = 10;
+
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+    private String evictionPolicy = LruPolicy.NAME;
+    private long softTtlSeconds = 60;
+    private long hardTtlSeconds = 600;
+
+    public int getCacheSize() { return cacheSize; }
+    public void setCacheSize(int cacheSize) { this.cacheSize = cacheSize; }
+
+    public String getEvictionPolicy() { return evictionPolicy; }
+    public void setEvictionPolicy(String evictionPolicy) { this.evictionPolicy = evictionPolicy; }
+
+    public long getSoftTtlSeconds() { return softTtlSeconds; }
+    public void setSoftTtlSeconds(long softTtlSeconds) { this.softTtlSeconds = softTtlSeconds; }
+
+    public long getHardTtlSeconds() { return hardTtlSeconds; }
+    public void setHardTtlSeconds(long hardTtlSeconds) { this.hardTtlSeconds = hardTtlSeconds; }
+}
@@ -4,6 +4,7 @@ import kameleoon.apiweather.sdk.dto.WeatherResponseSdkDto;
 import kameleoon.apiweather.sdk.service.SdkWeatherService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class SdkWeather {
@@ -13,25 +14,36 @@ public class SdkWeather {
 
     private final String apiKey;
     private final String mode;
+    private final SdkConfig config;
     private final SdkWeatherService weatherServiceSdk;
 
-    private SdkWeather(String apiKey, String mode, SdkWeatherService weatherServiceSdk) {
+    private SdkWeather(String apiKey, String mode, SdkConfig config, SdkWeatherService weatherServiceSdk) {
         this.apiKey = apiKey;
         this.mode = mode;
+        this.config = config;
         this.weatherServiceSdk = weatherServiceSdk;
         logger.info("SdkWeather instance created for API key: {}, mode: {}", apiKey, mode);
     }
 
     public static SdkWeather createInstance(String apiKey, String mode, SdkWeatherService weatherServiceSdk) {
+        return createInstance(apiKey, mode, new SdkConfig(), weatherServiceSdk);
+    }
+
+    public static SdkWeather createInstance(String apiKey, String mode, SdkConfig config,
+                                            SdkWeatherService weatherServiceSdk) {
         if (apiKey == null || apiKey.trim().isEmpty()) {
             throw new IllegalArgumentException("API key cannot be null or empty");
         }
         String normalizedKey = apiKey.trim();
+        if (config.getHardTtlSeconds() < config.getSoftTtlSeconds()) {
+            throw new IllegalArgumentException("Hard TTL cannot be shorter than soft TTL");
+        }
 
         if (instances.containsKey(normalizedKey)) {
             throw new IllegalStateException("SDK instance with this API key already exists");
         }
-        SdkWeather newInstance = new SdkWeather(normalizedKey, mode, weatherServiceSdk);
+        SdkWeather newInstance = new SdkWeather(normalizedKey, mode, config, weatherServiceSdk);
+        weatherServiceSdk.initializeCacheForApiKey(normalizedKey, config);
         instances.put(normalizedKey, newInstance);
         return newInstance;
     }
@@ -55,6 +67,10 @@ public class SdkWeather {
         return weatherServiceSdk.getWeatherForCity(cityName, this.apiKey, this.mode);
     }
 
+    public Map<String, Object> getWeatherNearby(double lat, double lon, double radiusKm) {
+        return weatherServiceSdk.getWeatherNearby(this.apiKey, lat, lon, radiusKm, this.mode);
+    }
+
     public static void removeInstance(String apiKey) {
         if (apiKey == null) {
             throw new IllegalArgumentException("API key cannot be null");
@@ -79,4 +95,8 @@ public class SdkWeather {
     public String getMode() {
         return mode;
     }
+
+    public SdkConfig getConfig() {
+        return config;
+    }
 }
\ No newline at end of file
@@ -1,38 +1,71 @@
 package kameleoon.apiweather.sdk.controller;
 
+import kameleoon.apiweather.sdk.SdkConfig;
 import kameleoon.apiweather.sdk.SdkWeather;
 import kameleoon.apiweather.sdk.dto.WeatherResponseSdkDto;
 import kameleoon.apiweather.sdk.service.SdkApiKeyService;
+import kameleoon.apiweather.sdk.service.SdkSubscriptionService;
 import kameleoon.apiweather.sdk.service.SdkWeatherService;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/sdk")
 @Validated
 public class SdkController {
 
+    private static final long STREAM_TIMEOUT_MILLIS = 600_000;
+
     private final SdkWeatherService weatherServiceSdk;
     private final SdkApiKeyService apiKeyService;
+    private final SdkSubscriptionService subscriptionService;
 
-    public SdkController(SdkWeatherService weatherServiceSdk, SdkApiKeyService apiKeyService) {
+    public SdkController(SdkWeatherService weatherServiceSdk, SdkApiKeyService apiKeyService,
+                         SdkSubscriptionService subscriptionService) {
         this.weatherServiceSdk = weatherServiceSdk;
         this.apiKeyService = apiKeyService;
+        this.subscriptionService = subscriptionService;
     }
 
     @PostMapping("/initialize")
     public ResponseEntity<Map<String, Object>> initializeSdk(
             @RequestParam @NotBlank String apiKey,
-            @RequestParam(defaultValue = "on-demand") @Pattern(regexp = "^(on-demand|polling)$", message = "Mode must be 'on-demand' or 'polling'")
-            String mode) {
+            @RequestParam(defaultValue = "on-demand") @Pattern(regexp = "^(on-demand|polling|stale-while-revalidate)$", message = "Mode must be 'on-demand', 'polling' or 'stale-while-revalidate'")
+            String mode,
+            @RequestParam(defaultValue = "10")
+            @Min(value = 1, message = "Cache size must be between 1 and 1000")
+            @Max(value = 1000, message = "Cache size must be between 1 and 1000")
+            int cacheSize,
+            @RequestParam(defaultValue = "lru") @Pattern(regexp = "^(lru|w-tinylfu)$", message = "Eviction policy must be 'lru' or 'w-tinylfu'")
+            String evictionPolicy,
+            @RequestParam(defaultValue = "60") @Min(value = 1, message = "Soft TTL must be at least 1 second")
+            long softTtlSeconds,
+            @RequestParam(defaultValue = "600") @Min(value = 1, message = "Hard TTL must be at least 1 second")
+            long hardTtlSeconds) {
         apiKeyService.getApiKey(apiKey);
-        SdkWeather.createInstance(apiKey, mode, weatherServiceSdk);
-        Map<String, Object> response = weatherServiceSdk.getSDKInitializedSuccess(mode);
+        SdkConfig config = new SdkConfig();
+        config.setCacheSize(cacheSize);
+        config.setEvictionPolicy(evictionPolicy);
+        config.setSoftTtlSeconds(softTtlSeconds);
+        config.setHardTtlSeconds(hardTtlSeconds);
+        SdkWeather.createInstance(apiKey, mode, config, weatherServiceSdk);
+        Map<String, Object> response = weatherServiceSdk.getSDKInitializedSuccess(mode, config);
         return ResponseEntity.ok(response);
     }
 
@@ -52,16 +85,82 @@ public class SdkController {
         return ResponseEntity.ok(weather);
     }
 
+    @GetMapping("/{apiKey}/nearby")
+    public ResponseEntity<Map<String, Object>> getWeatherNearby(
+            @PathVariable @NotBlank String apiKey,
+            @RequestParam
+            @DecimalMin(value = "-90.0", message = "Latitude must be between -90 and 90")
+            @DecimalMax(value = "90.0", message = "Latitude must be between -90 and 90")
+            double lat,
+            @RequestParam
+            @DecimalMin(value = "-180.0", message = "Longitude must be between -180 and 180")
+            @DecimalMax(value = "180.0", message = "Longitude must be between -180 and 180")
+            double lon,
+            @RequestParam(defaultValue = "10")
+            @DecimalMin(value = "0.1", message = "Radius must be between 0.1 and 100 km")
+            @DecimalMax(value = "100.0", message = "Radius must be between 0.1 and 100 km")
+            double radiusKm) {
+        SdkWeather sdk = SdkWeather.getInstance(apiKey);
+        return ResponseEntity.ok(sdk.getWeatherNearby(lat, lon, radiusKm));
+    }
+
     @PostMapping("/multiple")
     public ResponseEntity<Map<String, Object>> getMultipleCitiesWeather(
             @RequestParam @NotBlank String apiKey,
+            @RequestParam(defaultValue = "8")
+            @Min(value = 1, message = "Concurrency must be between 1 and 64")
+            @Max(value = 64, message = "Concurrency must be between 1 and 64")
+            int maxConcurrency,
+            @RequestParam(defaultValue = "10000")
+            @Min(value = 100, message = "Timeout must be between 100 and 120000 ms")
+            @Max(value = 120000, message = "Timeout must be between 100 and 120000 ms")
+            long timeoutMillis,
             @RequestBody Map<String, List<String>> requestBody) {
         List<String> cities = requestBody.get("cities");
-        List<Map<String, Object>> results = weatherServiceSdk.getMultipleWeatherForCities(apiKey, cities);
+        List<Map<String, Object>> results =
+                weatherServiceSdk.getMultipleWeatherForCities(apiKey, cities, maxConcurrency, timeoutMillis);
         Map<String, Object> response = weatherServiceSdk.getSDKStatusResultsSuccess(results);
         return ResponseEntity.ok(response);
     }
 
+    @PostMapping(value = "/multiple/stream", produces = "application/x-ndjson")
+    public ResponseBodyEmitter streamMultipleCitiesWeather(
+            @RequestParam @NotBlank String apiKey,
+            @RequestParam(defaultValue = "8")
+            @Min(value = 1, message = "Concurrency must be between 1 and 64")
+            @Max(value = 64, message = "Concurrency must be between 1 and 64")
+            int maxConcurrency,
+            @RequestBody Map<String, List<String>> requestBody) {
+        List<String> cities = requestBody.get("cities");
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(STREAM_TIMEOUT_MILLIS);
+        weatherServiceSdk.streamMultipleWeatherForCities(apiKey, cities, maxConcurrency, result -> {
+            Set<ResponseBodyEmitter.DataWithMediaType> line = new LinkedHashSet<>();
+            line.add(new ResponseBodyEmitter.DataWithMediaType(result, MediaType.APPLICATION_JSON));
+            line.add(new ResponseBodyEmitter.DataWithMediaType("\n", MediaType.TEXT_PLAIN));
+            try {
+                emitter.send(line);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                emitter.completeWithError(error);
+            } else {
+                emitter.complete();
+            }
+        });
+        return emitter;
+    }
+
+    @GetMapping(value = "/{apiKey}/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(
+            @PathVariable @NotBlank String apiKey,
+            @RequestParam(required = false) List<String> cities) {
+        SdkWeather sdk = SdkWeather.getInstance(apiKey);
+        List<String> topics = cities == null ? null : cities.stream().map(weatherServiceSdk::resolveCityName).toList();
+        return subscriptionService.subscribe(sdk.getApiKey(), topics);
+    }
+
     @GetMapping("/{apiKey}/cached-cities")
     public ResponseEntity<Map<String, Object>> getCachedCities(@PathVariable @NotBlank String apiKey) {
         List<String> cities = weatherServiceSdk.getCachedCities(apiKey);
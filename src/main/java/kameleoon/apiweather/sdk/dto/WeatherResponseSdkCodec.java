@@ -0,0 +1,316 @@
+package kameleoon.apiweather.sdk.dto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Компактное бинарное представление WeatherResponseSdkDto для хранения в кэше.
+// Числа пишутся фиксированной раскладкой без потерь, повторяющиеся строки (описания погоды,
+// иконки, страна, base) заменяются номером в общем словаре процесса
+public final class WeatherResponseSdkCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final int HAS_COORD = 1;
+    private static final int HAS_MAIN = 1 << 1;
+    private static final int HAS_WIND = 1 << 2;
+    private static final int HAS_CLOUDS = 1 << 3;
+    private static final int HAS_SYS = 1 << 4;
+    private static final int HAS_RAIN = 1 << 5;
+    private static final int HAS_SNOW = 1 << 6;
+    private static final int HAS_WEATHER = 1 << 7;
+
+    private static final short NULL_STRING = -1;
+    private static final short INLINE_STRING = -2;
+    private static final int MAX_INTERNED = 4096;
+
+    private static final Map<String, Short> internedIds = new ConcurrentHashMap<>();
+    private static final List<String> internedValues = new ArrayList<>();
+    private static volatile String[] internedSnapshot = new String[0];
+
+    private WeatherResponseSdkCodec() {
+    }
+
+    public static byte[] encode(WeatherResponseSdkDto dto) {
+        ByteBuffer buffer = ByteBuffer.allocate(maxEncodedSize(dto));
+        int flags = (dto.getCoord() != null ? HAS_COORD : 0)
+                | (dto.getMain() != null ? HAS_MAIN : 0)
+                | (dto.getWind() != null ? HAS_WIND : 0)
+                | (dto.getClouds() != null ? HAS_CLOUDS : 0)
+                | (dto.getSys() != null ? HAS_SYS : 0)
+                | (dto.getRain() != null ? HAS_RAIN : 0)
+                | (dto.getSnow() != null ? HAS_SNOW : 0)
+                | (dto.getWeather() != null ? HAS_WEATHER : 0);
+        buffer.put(VERSION);
+        buffer.put((byte) flags);
+
+        if (dto.getCoord() != null) {
+            buffer.putDouble(dto.getCoord().getLon());
+            buffer.putDouble(dto.getCoord().getLat());
+        }
+        if (dto.getMain() != null) {
+            WeatherResponseSdkDto.Main main = dto.getMain();
+            buffer.putDouble(main.getTemp());
+            buffer.putDouble(main.getFeels_like());
+            buffer.putDouble(main.getTemp_min());
+            buffer.putDouble(main.getTemp_max());
+            buffer.putInt(main.getPressure());
+            buffer.putInt(main.getHumidity());
+            buffer.putDouble(main.getSea_level());
+            buffer.putDouble(main.getGrnd_level());
+        }
+        if (dto.getWind() != null) {
+            buffer.putDouble(dto.getWind().getSpeed());
+            buffer.putInt(dto.getWind().getDeg());
+            buffer.putDouble(dto.getWind().getGust());
+        }
+        if (dto.getClouds() != null) {
+            buffer.putInt(dto.getClouds().getAll());
+        }
+        if (dto.getSys() != null) {
+            WeatherResponseSdkDto.Sys sys = dto.getSys();
+            buffer.putInt(sys.getType());
+            buffer.putInt(sys.getId());
+            putInterned(buffer, sys.getCountry());
+            buffer.putLong(sys.getSunrise());
+            buffer.putLong(sys.getSunset());
+        }
+        if (dto.getRain() != null) {
+            putPrecipitation(buffer, dto.getRain().getOneHour(), dto.getRain().getThreeHours());
+        }
+        if (dto.getSnow() != null) {
+            putPrecipitation(buffer, dto.getSnow().getOneHour(), dto.getSnow().getThreeHours());
+        }
+        if (dto.getWeather() != null) {
+            buffer.put((byte) dto.getWeather().size());
+            for (WeatherResponseSdkDto.Weather weather : dto.getWeather()) {
+                buffer.putInt(weather.getId());
+                putInterned(buffer, weather.getMain());
+                putInterned(buffer, weather.getDescription());
+                putInterned(buffer, weather.getIcon());
+            }
+        }
+        putInterned(buffer, dto.getBase());
+        buffer.putInt(dto.getVisibility());
+        buffer.putLong(dto.getDt());
+        buffer.putInt(dto.getTimezone());
+        buffer.putInt(dto.getId());
+        putInline(buffer, dto.getName());
+        buffer.putInt(dto.getCod());
+
+        byte[] encoded = new byte[buffer.position()];
+        buffer.flip().get(encoded);
+        return encoded;
+    }
+
+    public static WeatherResponseSdkDto decode(byte[] encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        if (buffer.get() != VERSION) {
+            throw new IllegalArgumentException("Unsupported weather payload version");
+        }
+        int flags = buffer.get() & 0xFF;
+        WeatherResponseSdkDto dto = new WeatherResponseSdkDto();
+
+        if ((flags & HAS_COORD) != 0) {
+            WeatherResponseSdkDto.Coord coord = new WeatherResponseSdkDto.Coord();
+            coord.setLon(buffer.getDouble());
+            coord.setLat(buffer.getDouble());
+            dto.setCoord(coord);
+        }
+        if ((flags & HAS_MAIN) != 0) {
+            WeatherResponseSdkDto.Main main = new WeatherResponseSdkDto.Main();
+            main.setTemp(buffer.getDouble());
+            main.setFeels_like(buffer.getDouble());
+            main.setTemp_min(buffer.getDouble());
+            main.setTemp_max(buffer.getDouble());
+            main.setPressure(buffer.getInt());
+            main.setHumidity(buffer.getInt());
+            main.setSea_level(buffer.getDouble());
+            main.setGrnd_level(buffer.getDouble());
+            dto.setMain(main);
+        }
+        if ((flags & HAS_WIND) != 0) {
+            WeatherResponseSdkDto.Wind wind = new WeatherResponseSdkDto.Wind();
+            wind.setSpeed(buffer.getDouble());
+            wind.setDeg(buffer.getInt());
+            wind.setGust(buffer.getDouble());
+            dto.setWind(wind);
+        }
+        if ((flags & HAS_CLOUDS) != 0) {
+            WeatherResponseSdkDto.Clouds clouds = new WeatherResponseSdkDto.Clouds();
+            clouds.setAll(buffer.getInt());
+            dto.setClouds(clouds);
+        }
+        if ((flags & HAS_SYS) != 0) {
+            WeatherResponseSdkDto.Sys sys = new WeatherResponseSdkDto.Sys();
+            sys.setType(buffer.getInt());
+            sys.setId(buffer.getInt());
+            sys.setCountry(getString(buffer));
+            sys.setSunrise(buffer.getLong());
+            sys.setSunset(buffer.getLong());
+            dto.setSys(sys);
+        }
+        if ((flags & HAS_RAIN) != 0) {
+            WeatherResponseSdkDto.Rain rain = new WeatherResponseSdkDto.Rain();
+            byte present = buffer.get();
+            rain.setOneHour((present & 1) != 0 ? buffer.getDouble() : null);
+            rain.setThreeHours((present & 2) != 0 ? buffer.getDouble() : null);
+            dto.setRain(rain);
+        }
+        if ((flags & HAS_SNOW) != 0) {
+            WeatherResponseSdkDto.Snow snow = new WeatherResponseSdkDto.Snow();
+            byte present = buffer.get();
+            snow.setOneHour((present & 1) != 0 ? buffer.getDouble() : null);
+            snow.setThreeHours((present & 2) != 0 ? buffer.getDouble() : null);
+            dto.setSnow(snow);
+        }
+        if ((flags & HAS_WEATHER) != 0) {
+            int count = buffer.get() & 0xFF;
+            List<WeatherResponseSdkDto.Weather> conditions = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                WeatherResponseSdkDto.Weather weather = new WeatherResponseSdkDto.Weather();
+                weather.setId(buffer.getInt());
+                weather.setMain(getString(buffer));
+                weather.setDescription(getString(buffer));
+                weather.setIcon(getString(buffer));
+                conditions.add(weather);
+            }
+            dto.setWeather(conditions);
+        }
+        dto.setBase(getString(buffer));
+        dto.setVisibility(buffer.getInt());
+        dto.setDt(buffer.getLong());
+        dto.setTimezone(buffer.getInt());
+        dto.setId(buffer.getInt());
+        dto.setName(getString(buffer));
+        dto.setCod(buffer.getInt());
+        return dto;
+    }
+
+    // Приблизительный размер DTO в куче (заголовки 12 байт, сжатые ссылки, выравнивание по 8);
+    // нужен только для сравнения с бинарным форматом в статистике
+    public static long estimateHeapBytes(WeatherResponseSdkDto dto) {
+        long bytes = 80 + stringBytes(dto.getBase()) + stringBytes(dto.getName());
+        if (dto.getCoord() != null) {
+            bytes += 32;
+        }
+        if (dto.getMain() != null) {
+            bytes += 64;
+        }
+        if (dto.getWind() != null) {
+            bytes += 32;
+        }
+        if (dto.getClouds() != null) {
+            bytes += 16;
+        }
+        if (dto.getSys() != null) {
+            bytes += 40 + stringBytes(dto.getSys().getCountry());
+        }
+        if (dto.getRain() != null) {
+            bytes += 24 + (dto.getRain().getOneHour() != null ? 16 : 0) + (dto.getRain().getThreeHours() != null ? 16 : 0);
+        }
+        if (dto.getSnow() != null) {
+            bytes += 24 + (dto.getSnow().getOneHour() != null ? 16 : 0) + (dto.getSnow().getThreeHours() != null ? 16 : 0);
+        }
+        if (dto.getWeather() != null) {
+            bytes += 40 + 4L * dto.getWeather().size();
+            for (WeatherResponseSdkDto.Weather weather : dto.getWeather()) {
+                bytes += 32 + stringBytes(weather.getMain()) + stringBytes(weather.getDescription())
+                        + stringBytes(weather.getIcon());
+            }
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 24 + align(16 + value.length());
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static int maxEncodedSize(WeatherResponseSdkDto dto) {
+        int weatherCount = dto.getWeather() != null ? dto.getWeather().size() : 0;
+        return 256 + weatherCount * 10 + inlineSize(dto.getBase()) + inlineSize(dto.getName())
+                + (dto.getSys() != null ? inlineSize(dto.getSys().getCountry()) : 0)
+                + (dto.getWeather() != null ? dto.getWeather().stream()
+                        .mapToInt(w -> inlineSize(w.getMain()) + inlineSize(w.getDescription()) + inlineSize(w.getIcon()))
+                        .sum() : 0);
+    }
+
+    private static int inlineSize(String value) {
+        return value == null ? 2 : 4 + value.length() * 3;
+    }
+
+    private static void putPrecipitation(ByteBuffer buffer, Double oneHour, Double threeHours) {
+        buffer.put((byte) ((oneHour != null ? 1 : 0) | (threeHours != null ? 2 : 0)));
+        if (oneHour != null) {
+            buffer.putDouble(oneHour);
+        }
+        if (threeHours != null) {
+            buffer.putDouble(threeHours);
+        }
+    }
+
+    private static void putInterned(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort(NULL_STRING);
+            return;
+        }
+        Short id = intern(value);
+        if (id == null) {
+            putInline(buffer, value);
+        } else {
+            buffer.putShort(id);
+        }
+    }
+
+    private static void putInline(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort(NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort(INLINE_STRING);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        short tag = buffer.getShort();
+        if (tag == NULL_STRING) {
+            return null;
+        }
+        if (tag == INLINE_STRING) {
+            byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return internedSnapshot[tag];
+    }
+
+    // null, если словарь заполнен: тогда строка пишется целиком
+    private static Short intern(String value) {
+        Short id = internedIds.get(value);
+        if (id != null) {
+            return id;
+        }
+        synchronized (internedValues) {
+            id = internedIds.get(value);
+            if (id == null) {
+                if (internedValues.size() >= MAX_INTERNED) {
+                    return null;
+                }
+                id = (short) internedValues.size();
+                internedValues.add(value);
+                internedSnapshot = internedValues.toArray(new String[0]);
+                internedIds.put(value, id);
+            }
+            return id;
+        }
+    }
+}
@@ -20,6 +20,9 @@ public class WeatherResponseSdkDto {
     private int id;
     private String name;
     private int cod;
+    // у ответов с ошибкой cod != 200 и текст в message; наружу не сериализуется
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private String message;
 
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Rain {
@@ -193,4 +196,6 @@ public class WeatherResponseSdkDto {
 
     public int getCod() { return cod; }
     public void setCod(int cod) { this.cod = cod; }
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
 }
\ No newline at end of file
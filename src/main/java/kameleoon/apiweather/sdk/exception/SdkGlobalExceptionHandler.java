@@ -36,6 +36,12 @@ public class SdkGlobalExceptionHandler {
         return ResponseEntity.badRequest().body(e.getMessage());
     }
 
+    @ExceptionHandler(SdkRateLimitExceededException.class)
+    public ResponseEntity<String> handleRateLimitExceededException(SdkRateLimitExceededException e) {
+        logger.warn("Rate limit exceeded: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<String> handleIllegalArgumentException(IllegalArgumentException e) {
         logger.warn("Invalid argument: {}", e.getMessage());
@@ -0,0 +1,7 @@
+package kameleoon.apiweather.sdk.exception;
+
+public class SdkRateLimitExceededException extends SdkCustomException {
+    public SdkRateLimitExceededException(String message) {
+        super(message);
+    }
+}
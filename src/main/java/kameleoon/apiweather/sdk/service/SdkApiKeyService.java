@@ -3,6 +3,8 @@ package kameleoon.apiweather.sdk.service;
 import kameleoon.apiweather.sdk.entity.SdkApiKey;
 import kameleoon.apiweather.sdk.exception.SdkApiKeyNotFoundException;
 import kameleoon.apiweather.sdk.repository.SdkApiKeyRepository;
+import kameleoon.apiweather.cache.ApiKeyFilter;
+import kameleoon.apiweather.cache.ApiKeyValidityCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -12,9 +14,14 @@ public class SdkApiKeyService {
 
     private static final Logger logger = LoggerFactory.getLogger(SdkApiKeyService.class);
     private final SdkApiKeyRepository apiKeyRepository;
+    private final ApiKeyValidityCache validityCache;
+    private final ApiKeyFilter apiKeyFilter;
 
-    public SdkApiKeyService(SdkApiKeyRepository apiKeyRepository) {
+    public SdkApiKeyService(SdkApiKeyRepository apiKeyRepository, ApiKeyValidityCache validityCache,
+                               ApiKeyFilter apiKeyFilter) {
         this.apiKeyRepository = apiKeyRepository;
+        this.validityCache = validityCache;
+        this.apiKeyFilter = apiKeyFilter;
     }
 
     public String saveApiKey(String apiKey) {
@@ -24,6 +31,8 @@ public class SdkApiKeyService {
         }
         SdkApiKey newKey = new SdkApiKey(apiKey);
         apiKeyRepository.save(newKey);
+        validityCache.invalidate(apiKey);
+        apiKeyFilter.add(apiKey);
         logger.info("API Key saved successfully: {}", apiKey);
         return "API Key saved successfully.";
     }
@@ -34,12 +43,14 @@ public class SdkApiKeyService {
             throw new SdkApiKeyNotFoundException("API Key not found in the database.");
         }
         apiKeyRepository.deleteById(apiKey);
+        validityCache.invalidate(apiKey);
+        apiKeyFilter.remove(apiKey);
         logger.info("API Key deleted successfully: {}", apiKey);
         return "API Key deleted successfully.";
     }
 
     public void getApiKey(String apiKey) {
-        if (!apiKeyRepository.existsByApiKey(apiKey)) {
+        if (!isValidApiKey(apiKey)) {
             logger.warn("Attempt to retrieve a non-existent API key: {}", apiKey);
             throw new SdkApiKeyNotFoundException("API Key not found in the database.");
         }
@@ -47,6 +58,15 @@ public class SdkApiKeyService {
     }
 
     public boolean isValidApiKey(String apiKey) {
-        return apiKeyRepository.existsByApiKey(apiKey);
+        if (!apiKeyFilter.mightContain(apiKey)) {
+            return false;
+        }
+        return validityCache.isValid(apiKey, key -> {
+            boolean exists = apiKeyRepository.existsByApiKey(key);
+            if (!exists) {
+                apiKeyFilter.recordFalsePositive();
+            }
+            return exists;
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+package kameleoon.apiweather.sdk.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+@Service
+public class SdkSubscriptionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SdkSubscriptionService.class);
+    private static final long SUBSCRIPTION_TIMEOUT_MILLIS = 30 * 60 * 1000;
+    private static final String ALL_CITIES = "*";
+
+    // apiKey -> город (или "*") -> подписчики; пустые наборы и карты удаляются при отписке
+    private final Map<String, Map<String, Set<Subscriber>>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LongAdder publishedUpdates = new LongAdder();
+    private final LongAdder suppressedUpdates = new LongAdder();
+    private final LongAdder deliveredEvents = new LongAdder();
+
+    // События одному подписчику уходят строго по очереди: иначе два быстрых обновления города
+    // могут прийти в обратном порядке и подписчик останется со старым значением
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final String apiKey;
+        final List<String> topics;
+        final Queue<Set<ResponseBodyEmitter.DataWithMediaType>> pending = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean sending = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, String apiKey, List<String> topics) {
+            this.emitter = emitter;
+            this.apiKey = apiKey;
+            this.topics = topics;
+        }
+    }
+
+    public SseEmitter subscribe(String apiKey, List<String> cities) {
+        SseEmitter emitter = newEmitter();
+        List<String> topics = cities == null || cities.isEmpty() ? List.of(ALL_CITIES) : List.copyOf(cities);
+        Subscriber subscriber = new Subscriber(emitter, apiKey, topics);
+        // регистрация и отписка идут под compute по ключу, чтобы не потерять подписку в удаляемой пустой карте
+        subscribers.compute(apiKey, (k, existing) -> {
+            Map<String, Set<Subscriber>> byCity = existing != null ? existing : new ConcurrentHashMap<>();
+            for (String city : topics) {
+                byCity.computeIfAbsent(city, c -> ConcurrentHashMap.newKeySet()).add(subscriber);
+            }
+            return byCity;
+        });
+
+        Runnable unsubscribe = () -> unsubscribe(subscriber);
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        logger.info("New weather subscription for apiKey {} on {}", apiKey, topics);
+        return emitter;
+    }
+
+    public boolean hasSubscribers(String apiKey, String cityName) {
+        Map<String, Set<Subscriber>> byCity = subscribers.get(apiKey);
+        return byCity != null && (!isEmpty(byCity.get(cityName)) || !isEmpty(byCity.get(ALL_CITIES)));
+    }
+
+    // Событие собирается один раз и переиспользуется для всех подписчиков города
+    public void publish(String apiKey, String cityName, String weatherJson) {
+        Map<String, Set<Subscriber>> byCity = subscribers.get(apiKey);
+        if (byCity == null) {
+            return;
+        }
+        Set<ResponseBodyEmitter.DataWithMediaType> event = SseEmitter.event()
+                .name("weather")
+                .id(cityName)
+                .data(weatherJson, MediaType.APPLICATION_JSON)
+                .build();
+        publishedUpdates.increment();
+        deliver(byCity.get(cityName), event);
+        deliver(byCity.get(ALL_CITIES), event);
+    }
+
+    public void recordSuppressedUpdate() {
+        suppressedUpdates.increment();
+    }
+
+    public void closeAll(String apiKey) {
+        Map<String, Set<Subscriber>> byCity = subscribers.remove(apiKey);
+        if (byCity != null) {
+            byCity.values().forEach(topic -> topic.forEach(subscriber -> subscriber.emitter.complete()));
+        }
+    }
+
+    public Map<String, Object> getStats(String apiKey) {
+        Map<String, Set<Subscriber>> byCity = subscribers.getOrDefault(apiKey, Map.of());
+        return Map.of(
+                "subscriptions", byCity.values().stream().mapToInt(Set::size).sum(),
+                "publishedUpdates", publishedUpdates.sum(),
+                "suppressedUpdates", suppressedUpdates.sum(),
+                "deliveredEvents", deliveredEvents.sum()
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.keySet().forEach(this::closeAll);
+        senders.shutdownNow();
+    }
+
+    SseEmitter newEmitter() {
+        return new SseEmitter(SUBSCRIPTION_TIMEOUT_MILLIS);
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        subscriber.pending.clear();
+        subscribers.computeIfPresent(subscriber.apiKey, (k, byCity) -> {
+            for (String city : subscriber.topics) {
+                byCity.computeIfPresent(city, (c, topic) -> {
+                    topic.remove(subscriber);
+                    return topic.isEmpty() ? null : topic;
+                });
+            }
+            return byCity.isEmpty() ? null : byCity;
+        });
+    }
+
+    private void deliver(Set<Subscriber> topic, Set<ResponseBodyEmitter.DataWithMediaType> event) {
+        if (topic == null) {
+            return;
+        }
+        for (Subscriber subscriber : topic) {
+            subscriber.pending.add(event);
+            if (subscriber.sending.compareAndSet(false, true)) {
+                senders.execute(() -> drain(subscriber));
+            }
+        }
+    }
+
+    // Очередь подписчика разбирает не больше одной задачи; флаг снимается перед повторной проверкой,
+    // чтобы событие, добавленное в этот момент, не осталось без отправителя
+    private void drain(Subscriber subscriber) {
+        do {
+            Set<ResponseBodyEmitter.DataWithMediaType> event;
+            while ((event = subscriber.pending.poll()) != null) {
+                try {
+                    subscriber.emitter.send(event);
+                    deliveredEvents.increment();
+                } catch (IOException | IllegalStateException e) {
+                    unsubscribe(subscriber);
+                    logger.debug("Dropped weather subscriber: {}", e.getMessage());
+                }
+            }
+            subscriber.sending.set(false);
+        } while (!subscriber.pending.isEmpty() && subscriber.sending.compareAndSet(false, true));
+    }
+
+    private static boolean isEmpty(Set<Subscriber> topic) {
+        return topic == null || topic.isEmpty();
+    }
+}
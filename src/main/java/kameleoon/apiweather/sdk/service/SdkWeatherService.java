@@ -1,76 +1,353 @@
 package kameleoon.apiweather.sdk.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import kameleoon.apiweather.cache.BoundedCache;
+import kameleoon.apiweather.cache.CacheSnapshot;
+import kameleoon.apiweather.cache.CityNameCanonicalizer;
+import kameleoon.apiweather.cache.CityNotFoundCache;
+import kameleoon.apiweather.cache.GridSpatialIndex;
+import kameleoon.apiweather.cache.LruPolicy;
+import kameleoon.apiweather.cache.OffHeapStore;
+import kameleoon.apiweather.cache.PersistentWeatherCache;
+import kameleoon.apiweather.cache.PollingEngine;
+import kameleoon.apiweather.cache.SingleFlight;
+import kameleoon.apiweather.client.CapturingInputStream;
+import kameleoon.apiweather.client.GroupResponseParser;
+import kameleoon.apiweather.client.OpenWeatherMapClient;
+import kameleoon.apiweather.client.UpstreamRateLimiter;
+import kameleoon.apiweather.sdk.SdkConfig;
 import kameleoon.apiweather.sdk.SdkWeather;
+import kameleoon.apiweather.sdk.dto.WeatherResponseSdkCodec;
 import kameleoon.apiweather.sdk.dto.WeatherResponseSdkDto;
 import kameleoon.apiweather.sdk.exception.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
 import java.util.stream.Collectors;
 
 @Service
 public class SdkWeatherService {
 
     private static final Logger logger = LoggerFactory.getLogger(SdkWeatherService.class);
-    private static final int CACHE_SIZE_LIMIT = 10;
-    private static final long CACHE_VALIDITY_MINUTES = 1;
+    private static final String STALE_WHILE_REVALIDATE_MODE = "stale-while-revalidate";
+    private static final String SNAPSHOT_GROUP = "sdk-snapshot";
+    private static final String BINARY_PAYLOAD = "binary";
+    private static final String OFF_HEAP_PAYLOAD = "off-heap";
+    private static final String SNAPSHOT_FILE = "sdk-cache.snapshot";
+    private static final String GROUP_REFRESH_TASK = "@group-refresh";
 
     @Value("${openweathermap.api.url}")
     private String weatherApiUrl;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // пустое значение отключает групповое обновление в polling
+    @Value("${openweathermap.api.group-url:}")
+    private String groupApiUrl;
+
+    // OpenWeatherMap принимает в group не больше 20 id
+    @Value("${weather.polling.batch-size:20}")
+    private int refreshBatchSize = 20;
+
+    // сколько ждать, пока подойдут сроки обновления других городов ключа, прежде чем отправить group-запрос
+    @Value("${weather.polling.batch-window-millis:500}")
+    private long refreshBatchWindowMillis = 500;
+
+    @Value("${weather.cache.ttl-millis:60000}")
+    private long cacheTtlMillis = 60000;
+
+    @Value("${weather.polling.jitter-millis:5000}")
+    private long refreshJitterMillis = 5000;
+
+    // Адаптивный polling: частота обновления города зависит от числа чтений за прошлый период
+    @Value("${weather.polling.adaptive.enabled:true}")
+    private boolean adaptivePolling = true;
+
+    // столько чтений за период делают город горячим: он обновляется до истечения
+    @Value("${weather.polling.adaptive.hot-reads:3}")
+    private int hotReadsPerRefresh = 3;
+
+    // горячий город обновляется, когда прошла эта доля TTL
+    @Value("${weather.polling.adaptive.refresh-ahead-ratio:0.8}")
+    private double refreshAheadRatio = 0.8;
+
+    // интервал для нечитаемого города удваивается с каждым простоем, но не больше TTL * max-backoff-multiplier
+    @Value("${weather.polling.adaptive.max-backoff-multiplier:8}")
+    private long maxBackoffMultiplier = 8;
+
+    // после стольких периодов подряд без чтений город выпадает из polling до следующего запроса
+    @Value("${weather.polling.adaptive.drop-after-idle-refreshes:5}")
+    private int dropAfterIdleRefreshes = 5;
+
+    // object — DTO в куче, binary — компактный WeatherResponseSdkCodec ценой декодирования при чтении,
+    // off-heap — те же байты в OffHeapStore, в куче остаётся только адрес
+    @Value("${weather.cache.payload-format:object}")
+    private String payloadFormat = "object";
+
+    // пустое значение отключает снимки
+    @Value("${weather.snapshot.directory:}")
+    private String snapshotDirectory;
+
+    @Value("${weather.snapshot.interval-millis:30000}")
+    private long snapshotIntervalMillis = 30000;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectReader weatherReader = objectMapper.readerFor(WeatherResponseSdkDto.class);
+    private final PollingEngine pollingEngine;
+    private final SdkSubscriptionService subscriptionService;
+    private final PersistentWeatherCache persistentCache;
+    private final OffHeapStore offHeapStore;
+    private final CityNameCanonicalizer cityNames;
+    private final CityNotFoundCache cityNotFound;
+    private final OpenWeatherMapClient upstreamClient;
+    private final UpstreamRateLimiter rateLimiter;
 
-    private final Map<String, Map<String, CacheEntry>> apiKeyCache = new ConcurrentHashMap<>();
+    private final Map<String, BoundedCache<String, CacheEntry>> apiKeyCache = new ConcurrentHashMap<>();
 
-    private final Map<String, ScheduledExecutorService> pollingSchedulers = new ConcurrentHashMap<>();
+    private final Map<String, SdkConfig> apiKeyConfigs = new ConcurrentHashMap<>();
 
     private final Map<String, Boolean> pollingActiveFlags = new ConcurrentHashMap<>();
 
+    private final Map<String, GridSpatialIndex<String>> spatialIndexes = new ConcurrentHashMap<>();
+
+    @Value("${weather.spatial-index.cell-degrees:0.5}")
+    private double spatialCellDegrees = 0.5;
+
+    private final SingleFlight<LoadKey, WeatherResponseSdkDto> inFlightLoads = new SingleFlight<>();
+
+    private final Set<LoadKey> backgroundRefreshes = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, PendingRefreshes> pendingRefreshes = new ConcurrentHashMap<>();
+
+    private final LongAdder groupRefreshCalls = new LongAdder();
+
+    private final LongAdder groupRefreshedCities = new LongAdder();
+
+    private final LongAdder hotRefreshes = new LongAdder();
+
+    private final LongAdder backedOffRefreshes = new LongAdder();
+
+    private final LongAdder droppedFromPolling = new LongAdder();
+
+    private final ExecutorService virtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private record LoadKey(String apiKey, String cityName) {
+    }
+
+    // json — исходный ответ OpenWeatherMap для кэша второго уровня, null если он выключен
+    private record Fetched(WeatherResponseSdkDto weather, String json) {
+    }
+
+    // Чтения города между обновлениями; трекер переходит от записи к записи, сменяющей её в кэше.
+    // Запись появляется в ответ на чтение, поэтому счёт начинается с единицы
+    private static final class AccessTracker {
+        final AtomicInteger readsSinceRefresh = new AtomicInteger(1);
+        volatile int idleRefreshes;
+    }
+
+    // Города ключа, чьё обновление уже пора делать; scheduled — задача группового обновления уже поставлена
+    private record PendingRefreshes(Set<String> cities, AtomicBoolean scheduled) {
+    }
+
+    public SdkWeatherService(PollingEngine pollingEngine, SdkSubscriptionService subscriptionService,
+                             PersistentWeatherCache persistentCache, OffHeapStore offHeapStore,
+                             CityNameCanonicalizer cityNames, CityNotFoundCache cityNotFound,
+                             OpenWeatherMapClient upstreamClient, UpstreamRateLimiter rateLimiter) {
+        this.pollingEngine = pollingEngine;
+        this.subscriptionService = subscriptionService;
+        this.persistentCache = persistentCache;
+        this.offHeapStore = offHeapStore;
+        this.cityNames = cityNames;
+        this.cityNotFound = cityNotFound;
+        this.upstreamClient = upstreamClient;
+        this.rateLimiter = rateLimiter;
+    }
+
+    // В формате object DTO разделяется между всеми читателями кэша и не должен изменяться.
+    // В форматах binary и off-heap хранятся только байты кодека (в куче или в OffHeapStore),
+    // а DTO собирается заново при каждом чтении
     private static class CacheEntry {
-        final String data;
-        final LocalDateTime timestamp;
+        private final WeatherResponseSdkDto data;
+        private final byte[] encoded;
+        private final OffHeapStore offHeap;
+        private final long offHeapAddress;
+        final long timestamp;
         final String originalApiKey;
+        private volatile long contentHash = -1;
+        // задаётся до публикации записи в кэше, см. putIntoCache
+        private AccessTracker access = new AccessTracker();
 
-        CacheEntry(String data, LocalDateTime timestamp, String originalApiKey) {
+        private CacheEntry(WeatherResponseSdkDto data, byte[] encoded, OffHeapStore offHeap, long offHeapAddress,
+                           long timestamp, String originalApiKey) {
             this.data = data;
+            this.encoded = encoded;
+            this.offHeap = offHeap;
+            this.offHeapAddress = offHeapAddress;
             this.timestamp = timestamp;
             this.originalApiKey = originalApiKey;
         }
+
+        static CacheEntry create(WeatherResponseSdkDto data, long timestamp, String originalApiKey,
+                                 String payloadFormat, OffHeapStore offHeap) {
+            return switch (payloadFormat) {
+                case BINARY_PAYLOAD -> new CacheEntry(null, WeatherResponseSdkCodec.encode(data), null, -1,
+                        timestamp, originalApiKey);
+                case OFF_HEAP_PAYLOAD -> new CacheEntry(null, null, offHeap,
+                        offHeap.write(WeatherResponseSdkCodec.encode(data)), timestamp, originalApiKey);
+                default -> new CacheEntry(data, null, null, -1, timestamp, originalApiKey);
+            };
+        }
+
+        void recordRead() {
+            access.readsSinceRefresh.incrementAndGet();
+        }
+
+        // null, если значение вне кучи вытеснено вместе со своим сегментом
+        WeatherResponseSdkDto data() {
+            if (data != null) {
+                return data;
+            }
+            byte[] bytes = offHeap != null ? offHeap.read(offHeapAddress) : encoded;
+            return bytes != null ? WeatherResponseSdkCodec.decode(bytes) : null;
+        }
+
+        long payloadBytes() {
+            if (data != null) {
+                return WeatherResponseSdkCodec.estimateHeapBytes(data);
+            }
+            byte[] bytes = offHeap != null ? offHeap.read(offHeapAddress) : encoded;
+            return bytes != null ? bytes.length : 0;
+        }
+
+        byte[] json(ObjectMapper objectMapper) throws JsonProcessingException {
+            WeatherResponseSdkDto value = data();
+            return value != null ? objectMapper.writeValueAsBytes(value) : null;
+        }
+
+        long contentHash(ObjectMapper objectMapper) throws JsonProcessingException {
+            long hash = contentHash;
+            if (hash < 0) {
+                byte[] json = json(objectMapper);
+                if (json == null) {
+                    return -1;
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(json);
+                hash = crc.getValue();
+                contentHash = hash;
+            }
+            return hash;
+        }
+    }
+
+    // Кэши восстанавливаются до повторной регистрации ключей: SdkWeather-экземпляры в памяти не переживают рестарт,
+    // а initializeCacheForApiKey переносит восстановленные записи в кэш с конфигурацией клиента
+    @PostConstruct
+    public void restoreSnapshot() {
+        if (snapshotDirectory == null || snapshotDirectory.isBlank()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long maxAgeMillis = Math.max(cacheTtlMillis, TimeUnit.SECONDS.toMillis(new SdkConfig().getHardTtlSeconds()));
+        try {
+            Map<String, List<CacheSnapshot.Entry>> entriesByKey = CacheSnapshot.read(snapshotPath()).stream()
+                    .filter(entry -> System.currentTimeMillis() - entry.timestamp() < maxAgeMillis)
+                    .sorted(Comparator.comparingLong(CacheSnapshot.Entry::timestamp))
+                    .collect(Collectors.groupingBy(CacheSnapshot.Entry::group));
+            int restored = 0;
+            for (Map.Entry<String, List<CacheSnapshot.Entry>> group : entriesByKey.entrySet()) {
+                List<CacheSnapshot.Entry> entries = group.getValue();
+                BoundedCache<String, CacheEntry> cityCache = BoundedCache.create(
+                        Math.max(SdkConfig.DEFAULT_CACHE_SIZE, entries.size()), LruPolicy.NAME, unindexOnRemoval(group.getKey()));
+                for (CacheSnapshot.Entry entry : entries) {
+                    WeatherResponseSdkDto weather = objectMapper.readValue(entry.payload(), WeatherResponseSdkDto.class);
+                    cityCache.put(entry.key(), newEntry(weather, entry.timestamp(), entry.originalApiKey()));
+                    indexLocation(group.getKey(), entry.key(), weather);
+                    restored++;
+                }
+                apiKeyCache.putIfAbsent(group.getKey(), cityCache);
+            }
+            logger.info("Restored {} cached cities for {} API keys from snapshot in {} ms", restored,
+                    entriesByKey.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            logger.warn("Failed to restore cache snapshot: {}", e.getMessage());
+        }
+        pollingEngine.schedule(SNAPSHOT_GROUP, SNAPSHOT_FILE, snapshotIntervalMillis, snapshotIntervalMillis,
+                this::writeSnapshot);
     }
 
     @PreDestroy
     public void shutdown() {
-        for (ScheduledExecutorService scheduler : pollingSchedulers.values()) {
-            scheduler.shutdown();
-            try {
-                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
+        virtualThreadExecutor.shutdownNow();
+        for (String apiKey : pollingActiveFlags.keySet()) {
+            pollingEngine.cancelGroup(apiKey);
+        }
+        pollingEngine.cancelGroup(SNAPSHOT_GROUP);
+        writeSnapshot();
+    }
+
+    private void writeSnapshot() {
+        if (snapshotDirectory == null || snapshotDirectory.isBlank()) {
+            return;
+        }
+        List<CacheSnapshot.Entry> entries = new ArrayList<>();
+        try {
+            for (Map.Entry<String, BoundedCache<String, CacheEntry>> cache : apiKeyCache.entrySet()) {
+                for (String cityName : cache.getValue().keys()) {
+                    CacheEntry entry = cache.getValue().peek(cityName);
+                    byte[] json = entry != null ? entry.json(objectMapper) : null;
+                    if (json != null) {
+                        entries.add(new CacheSnapshot.Entry(cache.getKey(), cityName, entry.originalApiKey,
+                                entry.timestamp, json));
+                    }
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                scheduler.shutdownNow();
             }
+            CacheSnapshot.write(snapshotPath(), entries);
+        } catch (IOException e) {
+            logger.warn("Failed to write cache snapshot: {}", e.getMessage());
         }
     }
 
+    private Path snapshotPath() {
+        return Path.of(snapshotDirectory, SNAPSHOT_FILE);
+    }
+
     public Map<String, Object> getSDKCacheStatsSuccess(String apiKey, Map<String, Object> stats) {
         return Map.of(
                 "status", "success",
@@ -112,9 +389,14 @@ public class SdkWeatherService {
     }
 
     public  Map<String, Object> getSDKStatusResultsSuccess(List<Map<String, Object>> results){
+        List<Object> timedOutCities = results.stream()
+                .filter(result -> Boolean.TRUE.equals(result.get("timedOut")))
+                .map(result -> result.get("city"))
+                .collect(Collectors.toList());
         return Map.of(
                 "status", "success",
-                "results", results);
+                "results", results,
+                "timedOutCities", timedOutCities);
     }
 
     public  Map<String, Object> getSDKInstanceRemovedSuccess(){
@@ -124,58 +406,407 @@ public class SdkWeatherService {
         );
     }
 
-    public  Map<String, Object> getSDKInitializedSuccess(String mode){
+    public  Map<String, Object> getSDKInitializedSuccess(String mode, SdkConfig config){
         return Map.of(
                 "status", "success",
                 "message", "SDK initialized successfully",
-                "mode", mode);
+                "mode", mode,
+                "cacheSize", config.getCacheSize(),
+                "evictionPolicy", config.getEvictionPolicy());
+    }
+
+    public void initializeCacheForApiKey(String apiKey, SdkConfig config) {
+        apiKeyConfigs.put(apiKey, config);
+        BoundedCache<String, CacheEntry> cityCache = createCache(apiKey, config);
+        BoundedCache<String, CacheEntry> restored = apiKeyCache.get(apiKey);
+        if (restored != null) {
+            for (String cityName : restored.keys()) {
+                CacheEntry entry = restored.peek(cityName);
+                if (entry != null) {
+                    cityCache.put(cityName, entry);
+                }
+            }
+        }
+        apiKeyCache.put(apiKey, cityCache);
+    }
+
+    private BoundedCache<String, CacheEntry> createCache(String apiKey, SdkConfig config) {
+        return BoundedCache.create(config.getCacheSize(), config.getEvictionPolicy(), unindexOnRemoval(apiKey));
+    }
+
+    // город, покинувший кэш ключа, уходит и из его пространственного индекса, чтобы индекс не рос без предела
+    private Consumer<String> unindexOnRemoval(String apiKey) {
+        return cityName -> {
+            GridSpatialIndex<String> index = spatialIndexes.get(apiKey);
+            if (index != null) {
+                index.remove(cityName);
+            }
+        };
     }
 
-    public List<Map<String, Object>> getMultipleWeatherForCities(String apiKey, List<String> cities) {
+    public List<Map<String, Object>> getMultipleWeatherForCities(String apiKey, List<String> cities,
+                                                                 int maxConcurrency, long timeoutMillis) {
         if (cities == null || cities.isEmpty()) {
             throw new SdkCitiesListRequiredException("City list is required.");
         }
 
         SdkWeather sdk = SdkWeather.getInstance(apiKey);
+        Semaphore permits = new Semaphore(maxConcurrency);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        List<Future<WeatherResponseSdkDto>> futures = new ArrayList<>(cities.size());
+        for (String city : cities) {
+            futures.add(virtualThreadExecutor.submit(() -> {
+                permits.acquire();
+                try {
+                    if (System.nanoTime() - deadline >= 0) {
+                        throw new TimeoutException();
+                    }
+                    return sdk.getWeather(city);
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+
+        // результаты собираются в порядке исходного списка; не успевшие к сроку задачи
+        // не прерываются, чтобы не сорвать общую загрузку для других ожидающих
+        List<Map<String, Object>> results = new ArrayList<>(cities.size());
+        for (int i = 0; i < cities.size(); i++) {
+            String city = cities.get(i);
+            Future<WeatherResponseSdkDto> future = futures.get(i);
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                results.add(Map.of("city", city, "data", future.get(remaining, TimeUnit.NANOSECONDS)));
+            } catch (TimeoutException e) {
+                results.add(timedOutResult(city, timeoutMillis));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof TimeoutException) {
+                    results.add(timedOutResult(city, timeoutMillis));
+                } else {
+                    results.add(Map.of("city", city, "error", "Failed to process weather: " + e.getCause().getMessage()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(Map.of("city", city, "error", "Request interrupted"));
+            }
+        }
+        return results;
+    }
 
-        return cities.stream()
-                .map(city -> {
+    // Свежие записи из кэша отдаются сразу, остальные города — по мере готовности; задач в полёте
+    // не больше maxConcurrency, поэтому память не растёт с длиной списка
+    public CompletableFuture<Void> streamMultipleWeatherForCities(String apiKey, List<String> cities, int maxConcurrency,
+                                                                  Consumer<Map<String, Object>> sink) {
+        if (cities == null || cities.isEmpty()) {
+            throw new SdkCitiesListRequiredException("City list is required.");
+        }
+        SdkWeather sdk = SdkWeather.getInstance(apiKey);
+
+        return CompletableFuture.runAsync(() -> {
+            AtomicBoolean clientGone = new AtomicBoolean();
+            List<String> pending = new ArrayList<>();
+            for (String city : cities) {
+                WeatherResponseSdkDto cached = getFreshFromCache(apiKey, city);
+                if (cached == null) {
+                    pending.add(city);
+                } else if (!emit(sink, Map.of("city", city, "data", cached), clientGone)) {
+                    return;
+                }
+            }
+
+            Semaphore permits = new Semaphore(maxConcurrency);
+            for (String city : pending) {
+                permits.acquireUninterruptibly();
+                if (clientGone.get()) {
+                    permits.release();
+                    break;
+                }
+                virtualThreadExecutor.execute(() -> {
                     try {
-                        WeatherResponseSdkDto weather = sdk.getWeather(city);
-                        return Map.of("city", city, "data", weather);
-                    } catch (Exception e) {
-                        return Map.<String, Object>of("city", city, "error", "Failed to process weather: " + e.getMessage());
+                        Map<String, Object> result;
+                        try {
+                            result = Map.of("city", city, "data", sdk.getWeather(city));
+                        } catch (Exception e) {
+                            result = Map.of("city", city, "error", "Failed to process weather: " + e.getMessage());
+                        }
+                        emit(sink, result, clientGone);
+                    } finally {
+                        permits.release();
                     }
-                })
-                .collect(Collectors.toList());
+                });
+            }
+            permits.acquireUninterruptibly(maxConcurrency);
+        }, virtualThreadExecutor);
+    }
+
+    private boolean emit(Consumer<Map<String, Object>> sink, Map<String, Object> result, AtomicBoolean clientGone) {
+        if (clientGone.get()) {
+            return false;
+        }
+        try {
+            sink.accept(result);
+            return true;
+        } catch (RuntimeException e) {
+            logger.debug("Stopped streaming weather results: {}", e.getMessage());
+            clientGone.set(true);
+            return false;
+        }
     }
 
-    public WeatherResponseSdkDto getWeatherForCity(String cityName, String apiKey, String mode) {
+    private WeatherResponseSdkDto getFreshFromCache(String apiKey, String requestedCityName) {
+        BoundedCache<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
+        CacheEntry entry = cityCache != null ? cityCache.get(cityNames.resolve(requestedCityName)) : null;
+        WeatherResponseSdkDto data = entry != null && isFresh(entry) ? entry.data() : null;
+        if (data != null) {
+            entry.recordRead();
+            cityCache.stats().recordHit();
+        }
+        return data;
+    }
+
+    private Map<String, Object> timedOutResult(String city, long timeoutMillis) {
+        return Map.of("city", city, "timedOut", true, "error", "Timed out after " + timeoutMillis + " ms");
+    }
+
+    // Ключ слота кэша — каноническое имя города, см. CityNameCanonicalizer
+    public String resolveCityName(String cityName) {
+        return cityNames.resolve(cityName);
+    }
+
+    public WeatherResponseSdkDto getWeatherForCity(String requestedCityName, String apiKey, String mode) {
+        String cityName = cityNames.resolve(requestedCityName);
         boolean isPollingRequest = "polling".equalsIgnoreCase(mode);
         if (isPollingRequest) {
             ensurePollingStarted(apiKey);
         }
 
-        Map<String, CacheEntry> cityCache = apiKeyCache.computeIfAbsent(apiKey, k -> new ConcurrentHashMap<>());
+        BoundedCache<String, CacheEntry> cityCache = apiKeyCache.computeIfAbsent(apiKey, k -> createCache(k, new SdkConfig()));
 
         CacheEntry cachedEntry = cityCache.get(cityName);
         if (cachedEntry != null) {
-            LocalDateTime now = LocalDateTime.now();
-            long minutesSinceUpdate = ChronoUnit.MINUTES.between(cachedEntry.timestamp, now);
-            if (minutesSinceUpdate < CACHE_VALIDITY_MINUTES) {
+            cachedEntry.recordRead();
+        }
+        WeatherResponseSdkDto cachedData = cachedEntry != null ? cachedEntry.data() : null;
+        // в режиме stale-while-revalidate запись годится до жёсткого TTL ключа, а не до общего weather.cache.ttl-millis
+        boolean staleWhileRevalidate = STALE_WHILE_REVALIDATE_MODE.equalsIgnoreCase(mode);
+        SdkConfig config = staleWhileRevalidate ? apiKeyConfigs.getOrDefault(apiKey, new SdkConfig()) : null;
+        long maxAgeMillis = staleWhileRevalidate ? TimeUnit.SECONDS.toMillis(config.getHardTtlSeconds()) : cacheTtlMillis;
+        if (cachedData != null) {
+            long ageMillis = System.currentTimeMillis() - cachedEntry.timestamp;
+            if (staleWhileRevalidate) {
+                if (ageMillis < TimeUnit.SECONDS.toMillis(config.getSoftTtlSeconds())) {
+                    cityCache.stats().recordHit();
+                    return cachedData;
+                }
+                if (ageMillis < maxAgeMillis) {
+                    cityCache.stats().recordStaleHit();
+                    refreshInBackground(cityCache, cityName, apiKey);
+                    return cachedData;
+                }
+            } else if (ageMillis < maxAgeMillis) {
+                cityCache.stats().recordHit();
+                return cachedData;
+            }
+        }
+        // истёкшая запись остаётся в кэше до замены: она пригодится, если квота исчерпана или OpenWeatherMap недоступен
+        cityCache.stats().recordMiss();
+
+        return inFlightLoads.execute(new LoadKey(apiKey, cityName),
+                () -> loadIntoCache(cityCache, cityName, apiKey, maxAgeMillis));
+    }
+
+    private WeatherResponseSdkDto loadIntoCache(BoundedCache<String, CacheEntry> cityCache, String cityName, String apiKey,
+                                                long maxAgeMillis) {
+        CacheEntry cachedEntry = cityCache.peek(cityName);
+        WeatherResponseSdkDto cachedData = cachedEntry != null && isFresh(cachedEntry, maxAgeMillis) ? cachedEntry.data() : null;
+        if (cachedData != null) {
+            return cachedData;
+        }
+
+        PersistentWeatherCache.Stored stored = persistentCache.find(cityName, maxAgeMillis);
+        if (stored != null) {
+            WeatherResponseSdkDto weather = parseWeatherData(stored.json(), cityName);
+            return putIntoCache(cityCache, cityNames.learn(cityName, weather.getId()), weather, stored.timestamp(), apiKey);
+        }
+        try {
+            return fetchIntoCache(cityCache, cityName, apiKey, UpstreamRateLimiter.Priority.ON_DEMAND);
+        } catch (SdkRateLimitExceededException | ResourceAccessException | HttpServerErrorException e) {
+            // квота исчерпана или OpenWeatherMap недоступен: лучше отдать устаревшие данные, чем ошибку
+            WeatherResponseSdkDto staleData = cachedEntry != null ? cachedEntry.data() : null;
+            if (staleData == null) {
+                throw e;
+            }
+            logger.info("Serving stale weather for city {} (apiKey {}): {}", cityName, apiKey, e.getMessage());
+            return staleData;
+        }
+    }
+
+    private void refreshInBackground(BoundedCache<String, CacheEntry> cityCache, String cityName, String apiKey) {
+        LoadKey key = new LoadKey(apiKey, cityName);
+        if (!backgroundRefreshes.add(key)) {
+            return;
+        }
+        try {
+            virtualThreadExecutor.execute(() -> {
                 try {
-                    return objectMapper.readValue(cachedEntry.data, WeatherResponseSdkDto.class);
+                    inFlightLoads.execute(key, () -> fetchIntoCache(cityCache, cityName, apiKey,
+                            UpstreamRateLimiter.Priority.BACKGROUND));
+                    logger.debug("Background refresh completed for city {} (apiKey {})", cityName, apiKey);
                 } catch (Exception e) {
-                    logger.warn("Cached data for {} (apiKey {}) is corrupted: {}", cityName, apiKey, e.getMessage());
+                    logger.warn("Background refresh failed for city {} (apiKey {}): {}", cityName, apiKey, e.getMessage());
+                } finally {
+                    backgroundRefreshes.remove(key);
                 }
-            } else {
-                cityCache.remove(cityName);
+            });
+        } catch (RejectedExecutionException e) {
+            backgroundRefreshes.remove(key);
+        }
+    }
+
+    private WeatherResponseSdkDto fetchIntoCache(BoundedCache<String, CacheEntry> cityCache, String cityName, String apiKey,
+                                                 UpstreamRateLimiter.Priority priority) {
+        if (cityNotFound.isNotFound(cityName)) {
+            throw new SdkCityNotFoundException("Weather data not found for city: " + cityName);
+        }
+        acquireQuota(apiKey, priority);
+        long loadStart = System.nanoTime();
+        Fetched fetched;
+        try {
+            fetched = fetchWeatherData(cityName, apiKey);
+        } catch (RuntimeException e) {
+            cityCache.stats().recordLoadFailure(System.nanoTime() - loadStart);
+            throw e;
+        }
+        cityCache.stats().recordLoadSuccess(System.nanoTime() - loadStart);
+        WeatherResponseSdkDto weather = fetched.weather();
+        String slot = cityNames.learn(cityName, weather.getId());
+        long timestamp = System.currentTimeMillis();
+        persistentCache.store(slot, fetched.json(), timestamp);
+        return putIntoCache(cityCache, slot, weather, timestamp, apiKey);
+    }
+
+    private WeatherResponseSdkDto putIntoCache(BoundedCache<String, CacheEntry> cityCache, String cityName,
+                                               WeatherResponseSdkDto weather, long timestamp, String apiKey) {
+        CacheEntry previous = cityCache.peek(cityName);
+        CacheEntry entry = newEntry(weather, timestamp, apiKey);
+        if (previous != null) {
+            entry.access = previous.access;
+        }
+        cityCache.put(cityName, entry);
+        indexLocation(apiKey, cityName, weather);
+        publishIfChanged(apiKey, cityName, previous, entry);
+        if (pollingActiveFlags.getOrDefault(apiKey, false)) {
+            scheduleRefresh(apiKey, cityName, entry);
+        }
+        return weather;
+    }
+
+    private void indexLocation(String apiKey, String cityName, WeatherResponseSdkDto weather) {
+        if (weather.getCoord() != null) {
+            spatialIndexes.computeIfAbsent(apiKey, k -> new GridSpatialIndex<>(spatialCellDegrees))
+                    .put(cityName, weather.getCoord().getLat(), weather.getCoord().getLon());
+        }
+    }
+
+    // Сначала ищется свежая запись кэша в радиусе; устаревшие города пропускаются, из индекса их убирает вытеснение.
+    // Если подходящей нет, погода запрашивается у OpenWeatherMap по координатам и кладётся в кэш под именем города
+    public Map<String, Object> getWeatherNearby(String apiKey, double lat, double lon, double radiusKm, String mode) {
+        if ("polling".equalsIgnoreCase(mode)) {
+            ensurePollingStarted(apiKey);
+        }
+        BoundedCache<String, CacheEntry> cityCache = apiKeyCache.computeIfAbsent(apiKey, k -> createCache(k, new SdkConfig()));
+
+        GridSpatialIndex<String> index = spatialIndexes.get(apiKey);
+        if (index != null) {
+            WeatherResponseSdkDto[] found = new WeatherResponseSdkDto[1];
+            GridSpatialIndex.Match<String> match = index.nearest(lat, lon, radiusKm, cityName -> {
+                CacheEntry entry = cityCache.get(cityName);
+                found[0] = entry != null && isFresh(entry) ? entry.data() : null;
+                if (found[0] != null) {
+                    entry.recordRead();
+                }
+                return found[0] != null;
+            });
+            if (match != null) {
+                cityCache.stats().recordHit();
+                return nearbyResult("cache", match.key(), match.distanceKm(), found[0]);
             }
         }
+        cityCache.stats().recordMiss();
 
-        String weatherData = fetchWeatherData(cityName, apiKey);
-        cityCache.put(cityName, new CacheEntry(weatherData, LocalDateTime.now(), apiKey));
+        LoadKey key = new LoadKey(apiKey, String.format(Locale.ROOT, "@%.3f,%.3f", lat, lon));
+        WeatherResponseSdkDto weather = inFlightLoads.execute(key, () -> fetchByCoordinatesIntoCache(cityCache, lat, lon, apiKey));
+        double distanceKm = weather.getCoord() != null
+                ? GridSpatialIndex.distanceKm(lat, lon, weather.getCoord().getLat(), weather.getCoord().getLon())
+                : 0;
+        return nearbyResult("upstream", weather.getName(), distanceKm, weather);
+    }
 
+    private Map<String, Object> nearbyResult(String source, String cityName, double distanceKm, WeatherResponseSdkDto weather) {
+        return Map.of(
+                "source", source,
+                "cityName", cityName != null ? cityName : "",
+                "distanceKm", Math.round(distanceKm * 100) / 100.0,
+                "data", weather);
+    }
+
+    private WeatherResponseSdkDto fetchByCoordinatesIntoCache(BoundedCache<String, CacheEntry> cityCache, double lat, double lon,
+                                                              String apiKey) {
+        acquireQuota(apiKey, UpstreamRateLimiter.Priority.ON_DEMAND);
+        String location = String.format(Locale.ROOT, "%s,%s", lat, lon);
+        long loadStart = System.nanoTime();
+        Fetched fetched;
+        try {
+            fetched = requestWeather(String.format(Locale.ROOT, "%s?lat=%s&lon=%s&appid=%s&units=metric",
+                    weatherApiUrl, lat, lon, apiKey), location);
+        } catch (RuntimeException e) {
+            cityCache.stats().recordLoadFailure(System.nanoTime() - loadStart);
+            throw e;
+        }
+        cityCache.stats().recordLoadSuccess(System.nanoTime() - loadStart);
+        WeatherResponseSdkDto weather = fetched.weather();
+        // точка вне населённого пункта: кэшировать не под чем
+        if (weather.getName() == null || weather.getName().isBlank()) {
+            return weather;
+        }
+        String slot = cityNames.learn(cityNames.resolve(weather.getName()), weather.getId());
+        long timestamp = System.currentTimeMillis();
+        persistentCache.store(slot, fetched.json(), timestamp);
+        return putIntoCache(cityCache, slot, weather, timestamp, apiKey);
+    }
+
+    private void publishIfChanged(String apiKey, String cityName, CacheEntry previous, CacheEntry entry) {
+        if (!subscriptionService.hasSubscribers(apiKey, cityName)) {
+            return;
+        }
+        try {
+            if (previous != null && previous.contentHash(objectMapper) == entry.contentHash(objectMapper)) {
+                subscriptionService.recordSuppressedUpdate();
+                return;
+            }
+            byte[] json = entry.json(objectMapper);
+            if (json != null) {
+                subscriptionService.publish(apiKey, cityName, new String(json, StandardCharsets.UTF_8));
+            }
+        } catch (JsonProcessingException e) {
+            logger.warn("Failed to serialize weather update for city {} (apiKey {}): {}", cityName, apiKey, e.getMessage());
+        }
+    }
+
+    private CacheEntry newEntry(WeatherResponseSdkDto weather, long timestamp, String apiKey) {
+        return CacheEntry.create(weather, timestamp, apiKey, payloadFormat, offHeapStore);
+    }
+
+    private boolean isFresh(CacheEntry entry) {
+        return isFresh(entry, cacheTtlMillis);
+    }
+
+    private boolean isFresh(CacheEntry entry, long maxAgeMillis) {
+        return System.currentTimeMillis() - entry.timestamp < maxAgeMillis;
+    }
+
+    private WeatherResponseSdkDto parseWeatherData(String weatherData, String cityName) {
         try {
             return objectMapper.readValue(weatherData, WeatherResponseSdkDto.class);
         } catch (Exception e) {
@@ -196,128 +827,307 @@ public class SdkWeatherService {
     }
 
     private void startPollingTaskForApiKey(String apiKey) {
-        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-        ScheduledFuture<?> future = scheduler.scheduleWithFixedDelay(() -> {
-            logger.debug("Polling task running for apiKey: {}", apiKey);
+        BoundedCache<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
+        if (cityCache == null) {
+            return;
+        }
+        for (String cityName : cityCache.keys()) {
+            CacheEntry entry = cityCache.peek(cityName);
+            if (entry != null) {
+                scheduleRefresh(apiKey, cityName, entry);
+            }
+        }
+    }
 
-            Map<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
-            if (cityCache == null || cityCache.isEmpty()) {
-                logger.debug("No cached cities for apiKey: {}", apiKey);
-                return;
+    // Каждая запись обновляется к своему истечению, со случайным сдвигом, чтобы обновления не шли пачкой.
+    // В адаптивном режиме горячий город обновляется заранее, а город без чтений — всё реже,
+    // пока не выпадет из polling (см. refreshCity); следующий запрос загрузит его и вернёт в расписание
+    private void scheduleRefresh(String apiKey, String cityName, CacheEntry entry) {
+        long jitter = refreshJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(refreshJitterMillis) : 0;
+        long interval = cacheTtlMillis;
+        if (adaptivePolling) {
+            int reads = entry.access.readsSinceRefresh.getAndSet(0);
+            if (reads >= hotReadsPerRefresh) {
+                entry.access.idleRefreshes = 0;
+                interval = (long) (cacheTtlMillis * refreshAheadRatio);
+                hotRefreshes.increment();
+            } else if (reads > 0) {
+                entry.access.idleRefreshes = 0;
+            } else {
+                int idle = ++entry.access.idleRefreshes;
+                interval = cacheTtlMillis * Math.min(1L << Math.min(idle, 30), maxBackoffMultiplier);
+                backedOffRefreshes.increment();
             }
+        }
+        long delay = entry.timestamp + interval - jitter - System.currentTimeMillis();
+        pollingEngine.schedule(apiKey, cityName, delay, 0, () -> refreshCity(apiKey, cityName));
+    }
 
-            LocalDateTime now = LocalDateTime.now();
-            List<String> citiesToRefresh = new ArrayList<>();
-            for (String cityName : cityCache.keySet()) {
-                CacheEntry entry = cityCache.get(cityName);
-                if (entry != null) {
-                    long minutesSinceUpdate = ChronoUnit.MINUTES.between(entry.timestamp, now);
-                    if (minutesSinceUpdate >= CACHE_VALIDITY_MINUTES) {
-                        citiesToRefresh.add(cityName);
-                    }
+    // При заданном group-url созревшие города с известным id копятся и обновляются group-запросами
+    private void refreshCity(String apiKey, String cityName) {
+        BoundedCache<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
+        CacheEntry entry = cityCache != null ? cityCache.peek(cityName) : null;
+        if (entry == null) {
+            return;
+        }
+        // решение о выпадении принимается до запроса, чтобы не тратить квоту на город, который никто не читает
+        if (adaptivePolling && entry.access.readsSinceRefresh.get() == 0
+                && entry.access.idleRefreshes >= dropAfterIdleRefreshes) {
+            droppedFromPolling.increment();
+            logger.debug("Polling: city {} is not read anymore, dropped from refresh (apiKey {})", cityName, apiKey);
+            return;
+        }
+        if (groupApiUrl != null && !groupApiUrl.isBlank()) {
+            WeatherResponseSdkDto data = entry.data();
+            if (data != null && data.getId() != 0) {
+                PendingRefreshes pending = pendingRefreshes.computeIfAbsent(apiKey,
+                        k -> new PendingRefreshes(ConcurrentHashMap.newKeySet(), new AtomicBoolean()));
+                pending.cities().add(cityName);
+                if (pending.scheduled().compareAndSet(false, true)) {
+                    pollingEngine.schedule(apiKey, GROUP_REFRESH_TASK, refreshBatchWindowMillis, 0,
+                            () -> refreshPendingCities(apiKey));
                 }
+                return;
             }
+        }
+        refreshCitySingly(cityCache, apiKey, cityName);
+    }
 
-            for (String cityName : citiesToRefresh) {
-                try {
-                    CacheEntry entry = cityCache.get(cityName);
-                    if (entry != null) {
-                        String updatedData = fetchWeatherData(cityName, entry.originalApiKey);
-                        cityCache.put(cityName, new CacheEntry(updatedData, LocalDateTime.now(), entry.originalApiKey));
-                        logger.info("Polling: updated weather for city {} (apiKey {})", cityName, apiKey);
-                    }
-                } catch (Exception e) {
-                    logger.warn("Polling update failed for city {} (apiKey {}): {}", cityName, apiKey, e.getMessage());
+    private void refreshCitySingly(BoundedCache<String, CacheEntry> cityCache, String apiKey, String cityName) {
+        try {
+            inFlightLoads.execute(new LoadKey(apiKey, cityName),
+                    () -> fetchIntoCache(cityCache, cityName, apiKey, UpstreamRateLimiter.Priority.BACKGROUND));
+            logger.info("Polling: updated weather for city {} (apiKey {})", cityName, apiKey);
+        } catch (Exception e) {
+            logger.warn("Polling update failed for city {} (apiKey {}): {}", cityName, apiKey, e.getMessage());
+            pollingEngine.schedule(apiKey, cityName, cacheTtlMillis, 0, () -> refreshCity(apiKey, cityName));
+        }
+    }
+
+    private void refreshPendingCities(String apiKey) {
+        PendingRefreshes pending = pendingRefreshes.get(apiKey);
+        BoundedCache<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
+        if (pending == null || cityCache == null) {
+            return;
+        }
+        // флаг снимается до разбора очереди: город, созревший во время обновления, поставит новую задачу
+        pending.scheduled().set(false);
+        Map<Integer, List<String>> slotsById = new LinkedHashMap<>();
+        for (String cityName : List.copyOf(pending.cities())) {
+            pending.cities().remove(cityName);
+            CacheEntry entry = cityCache.peek(cityName);
+            WeatherResponseSdkDto data = entry != null ? entry.data() : null;
+            if (data != null) {
+                slotsById.computeIfAbsent(data.getId(), id -> new ArrayList<>()).add(cityName);
+            }
+        }
+        List<Integer> ids = new ArrayList<>(slotsById.keySet());
+        for (int from = 0; from < ids.size(); from += refreshBatchSize) {
+            refreshGroup(cityCache, apiKey, ids.subList(from, Math.min(ids.size(), from + refreshBatchSize)), slotsById);
+        }
+    }
+
+    private void refreshGroup(BoundedCache<String, CacheEntry> cityCache, String apiKey, List<Integer> ids,
+                              Map<Integer, List<String>> slotsById) {
+        long loadStart = System.nanoTime();
+        List<Fetched> fetched;
+        try {
+            acquireQuota(apiKey, UpstreamRateLimiter.Priority.BACKGROUND);
+            fetched = fetchGroup(ids, apiKey);
+        } catch (Exception e) {
+            cityCache.stats().recordLoadFailure(System.nanoTime() - loadStart);
+            logger.warn("Polling group update failed for {} cities (apiKey {}): {}", ids.size(), apiKey, e.getMessage());
+            for (Integer id : ids) {
+                for (String cityName : slotsById.get(id)) {
+                    pollingEngine.schedule(apiKey, cityName, cacheTtlMillis, 0, () -> refreshCity(apiKey, cityName));
                 }
             }
-        }, 0, 1, TimeUnit.MINUTES); // Обновление каждую минуту
+            return;
+        }
+        cityCache.stats().recordLoadSuccess(System.nanoTime() - loadStart);
+        groupRefreshCalls.increment();
 
-        pollingSchedulers.put(apiKey, scheduler);
+        Set<Integer> missing = new HashSet<>(ids);
+        long timestamp = System.currentTimeMillis();
+        for (Fetched city : fetched) {
+            List<String> slots = slotsById.get(city.weather().getId());
+            if (slots == null || !missing.remove(city.weather().getId())) {
+                continue;
+            }
+            for (String cityName : slots) {
+                persistentCache.store(cityName, city.json(), timestamp);
+                putIntoCache(cityCache, cityName, city.weather(), timestamp, apiKey);
+                groupRefreshedCities.increment();
+            }
+        }
+        // город, которого нет в ответе, обновляется отдельным запросом
+        for (Integer id : missing) {
+            for (String cityName : slotsById.get(id)) {
+                refreshCitySingly(cityCache, apiKey, cityName);
+            }
+        }
+        logger.info("Polling: updated {} cities with one group request (apiKey {})", ids.size() - missing.size(), apiKey);
     }
 
-    private String fetchWeatherData(String cityName, String apiKey) {
-        String url = String.format("%s?q=%s&appid=%s&units=metric", weatherApiUrl, cityName, apiKey);
+    private List<Fetched> fetchGroup(List<Integer> ids, String apiKey) {
+        String url = String.format("%s?id=%s&appid=%s&units=metric", groupApiUrl,
+                ids.stream().map(String::valueOf).collect(Collectors.joining(",")), apiKey);
+        boolean keepJson = persistentCache.isEnabled();
+        return upstreamClient.get(url, (status, body) -> {
+            try {
+                List<GroupResponseParser.Element<WeatherResponseSdkDto>> elements =
+                        GroupResponseParser.parse(objectMapper, weatherReader, body, keepJson, ids.size());
+                return elements.stream().map(element -> new Fetched(element.weather(), element.json())).toList();
+            } catch (JsonProcessingException e) {
+                throw new SdkCustomException("Failed to parse group API response: " + e.getOriginalMessage());
+            }
+        });
+    }
 
-        String response = restTemplate.getForObject(url, String.class);
-        if (response == null) {
-            throw new SdkCustomException("API returned null response for city: " + cityName);
+    private void acquireQuota(String apiKey, UpstreamRateLimiter.Priority priority) {
+        if (!rateLimiter.tryAcquire(apiKey, priority)) {
+            throw new SdkRateLimitExceededException("OpenWeatherMap call quota exhausted for API key: " + apiKey);
         }
+    }
 
+    // OpenWeatherMap отвечает на неизвестный город статусом 404; ответ запоминается, чтобы повтор опечатки не тратил квоту
+    private Fetched fetchWeatherData(String cityName, String apiKey) {
         try {
-            JsonNode responseNode = objectMapper.readTree(response);
-            if (responseNode.has("cod") && responseNode.get("cod").asInt() != 200) {
-                String message = responseNode.path("message").asText("Unknown API Error");
-                if ("city not found".equalsIgnoreCase(message)) {
-                    throw new SdkCityNotFoundException("Weather data not found for city: " + cityName);
-                } else {
-                    throw new SdkCustomException("OpenWeatherMap API error: " + message);
-                }
+            return requestWeather(String.format("%s?q=%s&appid=%s&units=metric", weatherApiUrl, cityName, apiKey), cityName);
+        } catch (HttpClientErrorException.NotFound | SdkCityNotFoundException e) {
+            cityNotFound.put(cityName);
+            throw new SdkCityNotFoundException("Weather data not found for city: " + cityName);
+        }
+    }
+
+    // Ответ разбирается в DTO за один проход прямо из тела, cod и message читаются в том же проходе.
+    // Исходный JSON копируется попутно и только если он нужен кэшу второго уровня
+    private Fetched requestWeather(String url, String cityName) {
+        boolean keepJson = persistentCache.isEnabled();
+        Fetched fetched = upstreamClient.get(url, (status, body) -> {
+            CapturingInputStream capture = keepJson ? new CapturingInputStream(body) : null;
+            try {
+                WeatherResponseSdkDto weather = weatherReader.readValue(capture != null ? capture : body);
+                return new Fetched(weather, capture != null ? capture.captured() : null);
+            } catch (JsonProcessingException e) {
+                throw new SdkCustomException("Failed to parse API response for city " + cityName + ": " + e.getOriginalMessage());
             }
-            return response;
-        } catch (JsonProcessingException e) {
-            throw new SdkCustomException("Failed to parse API response for city " + cityName + ": " + e.getMessage());
+        });
+        WeatherResponseSdkDto weather = fetched.weather();
+        if (weather == null) {
+            throw new SdkCustomException("API returned null response for city: " + cityName);
         }
+        if (weather.getCod() != 0 && weather.getCod() != 200) {
+            String message = weather.getMessage() != null ? weather.getMessage() : "Unknown API Error";
+            if ("city not found".equalsIgnoreCase(message)) {
+                throw new SdkCityNotFoundException("Weather data not found for city: " + cityName);
+            }
+            throw new SdkCustomException("OpenWeatherMap API error: " + message);
+        }
+        return fetched;
     }
 
     public List<String> getCachedCities(String apiKey) {
-        Map<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
+        BoundedCache<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
         if (cityCache == null) {
             return new ArrayList<>();
         }
-        return new ArrayList<>(cityCache.keySet());
+        return cityCache.keys();
     }
 
-    public Map<String, Object> getCachedCityInfo(String apiKey, String cityName) {
-        Map<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
+    public Map<String, Object> getCachedCityInfo(String apiKey, String requestedCityName) {
+        String cityName = cityNames.resolve(requestedCityName);
+        BoundedCache<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
         if (cityCache == null) {
             throw new SdkApiKeyNotFoundException("No cache found for API key: " + apiKey);
         }
         CacheEntry entry = cityCache.get(cityName);
-        if (entry == null) {
+        byte[] json;
+        try {
+            json = entry != null ? entry.json(objectMapper) : null;
+        } catch (JsonProcessingException e) {
+            throw new SdkCustomException("Failed to serialize cached weather for city: " + cityName);
+        }
+        if (json == null) {
             throw new SdkCityNotInCacheException("City '" + cityName + "' not found in cache for API key: " + apiKey);
         }
         Map<String, Object> info = new ConcurrentHashMap<>();
         info.put("cityName", cityName);
-        info.put("timestamp", entry.timestamp);
-        info.put("ageMinutes", ChronoUnit.MINUTES.between(entry.timestamp, LocalDateTime.now()));
-        info.put("data", entry.data);
+        long ageMillis = System.currentTimeMillis() - entry.timestamp;
+        info.put("timestamp", LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.timestamp), ZoneId.systemDefault()));
+        info.put("ageMinutes", TimeUnit.MILLISECONDS.toMinutes(ageMillis));
+        info.put("ageMillis", ageMillis);
+        info.put("data", new String(json, StandardCharsets.UTF_8));
         return info;
     }
 
     public Map<String, Object> getCacheStats(String apiKey) {
-        Map<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
-        int size = cityCache != null ? cityCache.size() : 0;
+        BoundedCache<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
 
         Map<String, Object> stats = new ConcurrentHashMap<>();
-        stats.put("size", size);
-        stats.put("maxSize", CACHE_SIZE_LIMIT);
+        stats.put("size", cityCache != null ? cityCache.size() : 0);
+        stats.put("maxSize", cityCache != null ? cityCache.maximumSize() : SdkConfig.DEFAULT_CACHE_SIZE);
         stats.put("apiKey", apiKey);
         stats.put("pollingActive", pollingActiveFlags.getOrDefault(apiKey, false));
+        stats.put("payloadFormat", payloadFormat);
+        if (cityCache != null) {
+            long payloadBytes = 0;
+            int entries = 0;
+            for (String cityName : cityCache.keys()) {
+                CacheEntry entry = cityCache.peek(cityName);
+                if (entry != null) {
+                    payloadBytes += entry.payloadBytes();
+                    entries++;
+                }
+            }
+            stats.put("payloadBytes", payloadBytes);
+            stats.put("bytesPerEntry", entries == 0 ? 0 : payloadBytes / entries);
+            stats.put("evictionPolicy", cityCache.policyName());
+            stats.putAll(cityCache.stats().toMap());
+        }
+        stats.put("pollingEngine", pollingEngine.getStats());
+        stats.put("subscriptions", subscriptionService.getStats(apiKey));
+        stats.put("persistentCache", persistentCache.getStats());
+        stats.put("cityNames", cityNames.getStats());
+        stats.put("cityNotFound", cityNotFound.getStats());
+        stats.put("upstream", upstreamClient.getStats());
+        stats.put("quota", rateLimiter.getStats(apiKey));
+        stats.put("adaptivePolling", Map.of(
+                "enabled", adaptivePolling,
+                "hotRefreshes", hotRefreshes.sum(),
+                "backedOffRefreshes", backedOffRefreshes.sum(),
+                "droppedFromPolling", droppedFromPolling.sum()));
+        stats.put("groupRefresh", Map.of(
+                "enabled", groupApiUrl != null && !groupApiUrl.isBlank(),
+                "calls", groupRefreshCalls.sum(),
+                "refreshedCities", groupRefreshedCities.sum()));
+        GridSpatialIndex<String> index = spatialIndexes.get(apiKey);
+        stats.put("indexedLocations", index != null ? index.size() : 0);
+        if (OFF_HEAP_PAYLOAD.equals(payloadFormat)) {
+            stats.put("offHeap", offHeapStore.getStats());
+        }
         return stats;
     }
 
     public void clearCacheForApiKey(String apiKey) {
-        Map<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
+        BoundedCache<String, CacheEntry> cityCache = apiKeyCache.get(apiKey);
         if (cityCache != null) {
             cityCache.clear();
         }
+        GridSpatialIndex<String> index = spatialIndexes.get(apiKey);
+        if (index != null) {
+            index.clear();
+        }
     }
 
     public void removeCacheForApiKey(String apiKey) {
         apiKeyCache.remove(apiKey);
-        ScheduledExecutorService scheduler = pollingSchedulers.remove(apiKey);
-        if (scheduler != null) {
-            scheduler.shutdown();
-            try {
-                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                scheduler.shutdownNow();
-            }
-        }
+        apiKeyConfigs.remove(apiKey);
+        spatialIndexes.remove(apiKey);
+        pollingEngine.cancelGroup(apiKey);
         pollingActiveFlags.remove(apiKey);
+        pendingRefreshes.remove(apiKey);
+        subscriptionService.closeAll(apiKey);
         logger.info("Cache and polling removed for apiKey: {}", apiKey);
     }
 }
\ No newline at end of file
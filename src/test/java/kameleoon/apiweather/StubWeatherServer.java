@@ -0,0 +1,199 @@
+package kameleoon.apiweather;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Локальная заглушка OpenWeatherMap для тестов: считает обращения и соединения, умеет отвечать
+// с задержкой и заданным кодом ошибки. Города с названием на "unknown" не находятся, как у OpenWeatherMap.
+// group?id= отвечает по городам, которые уже запрашивались по имени
+public class StubWeatherServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final AtomicInteger weatherCalls = new AtomicInteger();
+    private final AtomicInteger groupCalls = new AtomicInteger();
+    private final AtomicInteger groupIds = new AtomicInteger();
+    private final AtomicInteger maxGroupSize = new AtomicInteger();
+    private final Map<Integer, String> namesById = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> callsById = new ConcurrentHashMap<>();
+    private final Set<String> connections = ConcurrentHashMap.newKeySet();
+    private volatile long delayMillis;
+    private volatile int failureStatus;
+    private volatile String temperature;
+
+    public StubWeatherServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/data/2.5/weather", this::handleWeather);
+        server.createContext("/data/2.5/group", this::handleGroup);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    public String weatherUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/data/2.5/weather";
+    }
+
+    public String groupUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/data/2.5/group";
+    }
+
+    public int weatherCalls() {
+        return weatherCalls.get();
+    }
+
+    // обращения по имени к конкретному городу, без group
+    public int weatherCalls(String city) {
+        AtomicInteger calls = callsById.get(cityId(city));
+        return calls != null ? calls.get() : 0;
+    }
+
+    public int groupCalls() {
+        return groupCalls.get();
+    }
+
+    // сколько id всего запрошено через group и сколько максимум в одном запросе
+    public int groupIds() {
+        return groupIds.get();
+    }
+
+    public int maxGroupSize() {
+        return maxGroupSize.get();
+    }
+
+    public int distinctConnections() {
+        return connections.size();
+    }
+
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    // 0 — отвечать нормально
+    public void setFailureStatus(int failureStatus) {
+        this.failureStatus = failureStatus;
+    }
+
+    // null — температура из weatherJson
+    public void setTemperature(String temperature) {
+        this.temperature = temperature;
+    }
+
+    public static int cityId(String city) {
+        // "London,GB" и "London" — один город, как у OpenWeatherMap
+        String name = city.split(",")[0].trim().toLowerCase(Locale.ROOT);
+        return Math.abs(name.hashCode() % 1_000_000) + 1;
+    }
+
+    // OpenWeatherMap отвечает своим написанием названия, а не тем, что было в запросе
+    public static String displayName(String city) {
+        String name = city.split(",")[0].trim().toLowerCase(Locale.ROOT);
+        return name.isEmpty() ? name : Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    public static String weatherJson(String city) {
+        return "{\"coord\":{\"lon\":-0.13,\"lat\":51.51},"
+                + "\"weather\":[{\"id\":300,\"main\":\"Drizzle\",\"description\":\"light intensity drizzle\",\"icon\":\"09d\"}],"
+                + "\"base\":\"stations\","
+                + "\"main\":{\"temp\":7.17,\"feels_like\":4.86,\"temp_min\":6.0,\"temp_max\":8.0,\"pressure\":1012,\"humidity\":81},"
+                + "\"visibility\":10000,\"wind\":{\"speed\":4.1,\"deg\":80},\"clouds\":{\"all\":90},\"dt\":1485789600,"
+                + "\"sys\":{\"type\":1,\"id\":5091,\"country\":\"GB\",\"sunrise\":1485762037,\"sunset\":1485794875},"
+                + "\"timezone\":0,\"id\":" + cityId(city) + ",\"name\":\"" + displayName(city) + "\",\"cod\":200}";
+    }
+
+    private void handleWeather(HttpExchange exchange) throws IOException {
+        weatherCalls.incrementAndGet();
+        connections.add(exchange.getRemoteAddress().toString());
+        pause();
+        int failure = failureStatus;
+        if (failure != 0) {
+            respond(exchange, failure, "{\"cod\":" + failure + ",\"message\":\"stub failure\"}");
+            return;
+        }
+        Map<String, String> params = queryParams(exchange);
+        if (params.containsKey("lat")) {
+            // по координатам заглушка отвечает городом "Nearby" ровно в запрошенной точке
+            String json = weatherJson("Nearby").replace("\"lon\":-0.13,\"lat\":51.51",
+                    "\"lon\":" + params.get("lon") + ",\"lat\":" + params.get("lat"));
+            respond(exchange, 200, json);
+            return;
+        }
+        String city = params.getOrDefault("q", "");
+        if (city.toLowerCase(Locale.ROOT).startsWith("unknown")) {
+            respond(exchange, 404, "{\"cod\":\"404\",\"message\":\"city not found\"}");
+            return;
+        }
+        namesById.put(cityId(city), city);
+        callsById.computeIfAbsent(cityId(city), id -> new AtomicInteger()).incrementAndGet();
+        String json = weatherJson(city);
+        String temp = temperature;
+        respond(exchange, 200, temp != null ? json.replace("\"temp\":7.17", "\"temp\":" + temp) : json);
+    }
+
+    private void handleGroup(HttpExchange exchange) throws IOException {
+        groupCalls.incrementAndGet();
+        pause();
+        String[] ids = queryParams(exchange).getOrDefault("id", "").split(",");
+        groupIds.addAndGet(ids.length);
+        maxGroupSize.accumulateAndGet(ids.length, Math::max);
+        StringBuilder list = new StringBuilder();
+        int count = 0;
+        for (String id : ids) {
+            String city = namesById.get(Integer.parseInt(id.trim()));
+            if (city != null) {
+                list.append(count++ == 0 ? "" : ",").append(weatherJson(city));
+            }
+        }
+        respond(exchange, 200, "{\"cnt\":" + count + ",\"list\":[" + list + "]}");
+    }
+
+    private void pause() {
+        long delay = delayMillis;
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,79 @@
+package kameleoon.apiweather.cache;
+
+import kameleoon.apiweather.rest.repository.ApiKeyRepository;
+import kameleoon.apiweather.rest.service.ApiKeyService;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ApiKeyValidityCacheTest {
+
+    private final ApiKeyRepository repository = mock(ApiKeyRepository.class);
+    private final ApiKeyValidityCache validityCache = new ApiKeyValidityCache(100, 300_000, 300_000);
+    // фильтр не загружен и пропускает все ключи, так что в БД ходит только кэш
+    private final ApiKeyService apiKeyService = new ApiKeyService(repository, validityCache,
+            new ApiKeyFilter(repository, 100, 0.01));
+
+    @Test
+    void hitDoesNotQueryRepository() {
+        when(repository.existsByApiKey("key")).thenReturn(true);
+
+        assertTrue(apiKeyService.isValidApiKey("key"));
+        assertTrue(apiKeyService.isValidApiKey("key"));
+        assertTrue(apiKeyService.isValidApiKey("key"));
+
+        verify(repository, times(1)).existsByApiKey("key");
+        assertEquals(2L, validityCache.getStats().get("hitCount"));
+    }
+
+    @Test
+    void saveAndDeleteInvalidateImmediately() {
+        when(repository.existsByApiKey("key")).thenReturn(false);
+        assertFalse(apiKeyService.isValidApiKey("key"));
+
+        apiKeyService.saveApiKey("key");
+        when(repository.existsByApiKey("key")).thenReturn(true);
+        assertTrue(apiKeyService.isValidApiKey("key"));
+
+        apiKeyService.deleteApiKey("key");
+        when(repository.existsByApiKey("key")).thenReturn(false);
+        assertFalse(apiKeyService.isValidApiKey("key"));
+    }
+
+    @Test
+    void loadRacingWithInvalidationIsNotCached() {
+        // ключ удалили, пока шёл запрос в БД: ответ "есть" уже устарел и не должен попасть в кэш
+        assertTrue(validityCache.isValid("key", key -> {
+            validityCache.invalidate(key);
+            return true;
+        }));
+
+        AtomicInteger loads = new AtomicInteger();
+        assertFalse(validityCache.isValid("key", key -> {
+            loads.incrementAndGet();
+            return false;
+        }));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void negativeResultsExpire() throws Exception {
+        ApiKeyValidityCache shortNegative = new ApiKeyValidityCache(100, 300_000, 50);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertFalse(shortNegative.isValid("key", key -> loads.incrementAndGet() < 0));
+        assertFalse(shortNegative.isValid("key", key -> loads.incrementAndGet() < 0));
+        assertEquals(1, loads.get());
+
+        Thread.sleep(80);
+        assertFalse(shortNegative.isValid("key", key -> loads.incrementAndGet() < 0));
+        assertEquals(2, loads.get());
+    }
+}
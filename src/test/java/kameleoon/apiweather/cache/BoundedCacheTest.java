@@ -0,0 +1,141 @@
+package kameleoon.apiweather.cache;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedCacheTest {
+
+    @Test
+    void sizeStaysWithinBoundUnderPuts() {
+        for (String policy : new String[]{LruPolicy.NAME, WindowTinyLfuPolicy.NAME}) {
+            BoundedCache<String, Integer> cache = BoundedCache.create(50, policy);
+            for (int i = 0; i < 1_000; i++) {
+                cache.put("city-" + i, i);
+                assertTrue(cache.size() <= 50, policy + " grew to " + cache.size());
+            }
+            assertEquals(50, cache.size());
+            assertEquals(950, cache.stats().evictionCount());
+        }
+    }
+
+    @Test
+    void lruEvictsLeastRecentlyReadKey() {
+        BoundedCache<String, Integer> cache = BoundedCache.create(3, LruPolicy.NAME);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        // чтение попадает в буфер и применяется к политике при следующей записи
+        cache.get("a");
+
+        cache.put("d", 4);
+
+        assertNull(cache.peek("b"));
+        assertNotNull(cache.peek("a"));
+        assertNotNull(cache.peek("c"));
+        assertNotNull(cache.peek("d"));
+    }
+
+    @Test
+    void overwriteAndRemoveKeepPolicyInSync() {
+        BoundedCache<String, Integer> cache = BoundedCache.create(2, LruPolicy.NAME);
+        cache.put("a", 1);
+        cache.put("a", 2);
+        cache.put("b", 3);
+        cache.remove("a");
+        cache.put("c", 4);
+
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.stats().evictionCount());
+        assertEquals(4, cache.peek("c"));
+    }
+
+    @Test
+    void removalListenerSeesEvictedAndRemovedKeys() {
+        List<String> removed = new ArrayList<>();
+        BoundedCache<String, Integer> cache = BoundedCache.create(2, LruPolicy.NAME, removed::add);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.remove("b");
+        cache.remove("missing");
+
+        assertEquals(List.of("a", "b"), removed);
+    }
+
+    @Test
+    void tinyLfuKeepsFrequentKeysThroughScanOfOneHitKeys() {
+        BoundedCache<String, Integer> tinyLfu = BoundedCache.create(100, WindowTinyLfuPolicy.NAME);
+        BoundedCache<String, Integer> lru = BoundedCache.create(100, LruPolicy.NAME);
+        for (BoundedCache<String, Integer> cache : List.of(tinyLfu, lru)) {
+            for (int i = 0; i < 50; i++) {
+                cache.put("hot-" + i, i);
+            }
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 50; i++) {
+                    cache.get("hot-" + i);
+                }
+            }
+            for (int i = 0; i < 1_000; i++) {
+                cache.put("scan-" + i, i);
+            }
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertNotNull(tinyLfu.peek("hot-" + i), "hot-" + i + " was evicted by the scan");
+            assertNull(lru.peek("hot-" + i));
+        }
+    }
+
+    @Test
+    void sketchAgesFrequenciesAfterSamplePeriod() {
+        FrequencySketch<String> sketch = new FrequencySketch<>(1_000);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(15, sketch.frequency("hot"));
+
+        int additions = 0;
+        while (sketch.frequency("hot") == 15 && additions < 1_000_000) {
+            sketch.increment("other-" + additions++);
+        }
+
+        // насыщенные счётчики делятся пополам примерно через 10 * ширина таблицы добавлений
+        assertEquals(7, sketch.frequency("hot"));
+        assertTrue(additions <= 10 * 4096, "reset after " + additions + " additions");
+
+        sketch.clear();
+        assertEquals(0, sketch.frequency("hot"));
+    }
+
+    @Test
+    void statsCountHitsMissesAndEvictions() {
+        BoundedCache<String, Integer> cache = BoundedCache.create(2, LruPolicy.NAME);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.stats().recordHit();
+        cache.stats().recordHit();
+        cache.stats().recordStaleHit();
+        cache.stats().recordMiss();
+        cache.stats().recordLoadSuccess(2_000_000);
+        cache.stats().recordLoadFailure(4_000_000);
+
+        Map<String, Object> stats = cache.stats().toMap();
+
+        assertEquals(3L, stats.get("hitCount"));
+        assertEquals(1L, stats.get("missCount"));
+        assertEquals(0.75, stats.get("hitRate"));
+        assertEquals(1L, stats.get("staleHitCount"));
+        assertEquals(1L, stats.get("evictionCount"));
+        assertEquals(1L, stats.get("loadSuccessCount"));
+        assertEquals(1L, stats.get("loadFailureCount"));
+        assertEquals(3.0, stats.get("averageLoadTimeMillis"));
+    }
+}
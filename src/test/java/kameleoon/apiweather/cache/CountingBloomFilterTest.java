@@ -0,0 +1,43 @@
+package kameleoon.apiweather.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountingBloomFilterTest {
+
+    @Test
+    void knownKeysPassAndUnknownKeysAreMostlyRejected() {
+        CountingBloomFilter filter = new CountingBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("key-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("key-" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("unknown-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void removedKeyIsRejectedWithoutAffectingOthers() {
+        CountingBloomFilter filter = new CountingBloomFilter(1_000, 0.01);
+        for (int i = 0; i < 1_000; i++) {
+            filter.add("key-" + i);
+        }
+        filter.add("revoked");
+        filter.remove("revoked");
+
+        assertFalse(filter.mightContain("revoked"));
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(filter.mightContain("key-" + i));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package kameleoon.apiweather.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class GridSpatialIndexTest {
+
+    @Test
+    void findsNearestAcrossTheAntimeridian() {
+        GridSpatialIndex<String> index = new GridSpatialIndex<>(0.5);
+        index.put("east", -16.5, 179.9);
+        index.put("far", -16.5, 178.0);
+
+        GridSpatialIndex.Match<String> match = index.nearest(-16.5, -179.95, 50, key -> true);
+
+        assertEquals("east", match.key());
+    }
+
+    @Test
+    void rejectedKeysAreSkippedButStayIndexed() {
+        GridSpatialIndex<String> index = new GridSpatialIndex<>(0.5);
+        index.put("stale", 51.51, -0.13);
+        index.put("fresh", 51.60, -0.10);
+
+        GridSpatialIndex.Match<String> match = index.nearest(51.51, -0.13, 20, key -> key.equals("fresh"));
+
+        assertEquals("fresh", match.key());
+        assertEquals(2, index.size());
+        // устаревшая запись остаётся в кэше для отката и снова находится, когда её примут
+        assertEquals("stale", index.nearest(51.51, -0.13, 1, key -> true).key());
+        assertNull(index.nearest(51.51, -0.13, 1, key -> false));
+    }
+}
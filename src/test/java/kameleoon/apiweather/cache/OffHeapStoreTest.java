@@ -0,0 +1,77 @@
+package kameleoon.apiweather.cache;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapStoreTest {
+
+    @Test
+    void oldestSegmentIsRecycledOnceBudgetIsExhausted() {
+        OffHeapStore store = new OffHeapStore(4096, 1024);
+        long first = store.write(payload(1, 100));
+        long last = 0;
+        for (int i = 0; i < 100; i++) {
+            last = store.write(payload(i, 100));
+        }
+
+        assertNull(store.read(first));
+        assertArrayEquals(payload(99, 100), store.read(last));
+    }
+
+    @Test
+    void concurrentReadsNeverSeeOverwrittenBytes() throws Exception {
+        OffHeapStore store = new OffHeapStore(8192, 1024);
+        AtomicLong latest = new AtomicLong(store.write(payload(0, 64)));
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 1; i < 200_000; i++) {
+                    latest.set(store.write(payload(i, 64)));
+                }
+                running.set(false);
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 3; r++) {
+                readers.add(executor.submit(() -> {
+                    // адрес держится долго, чтобы его сегмент успел переиспользоваться во время чтения
+                    long address = latest.get();
+                    for (long reads = 0; running.get(); reads++) {
+                        byte[] bytes = store.read(address);
+                        if (bytes != null) {
+                            byte first = bytes[0];
+                            for (byte b : bytes) {
+                                assertTrue(b == first, "torn read " + Arrays.toString(bytes));
+                            }
+                        }
+                        if (reads % 1000 == 0) {
+                            address = latest.get();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+            writer.get();
+        }
+    }
+
+    private static byte[] payload(int value, int length) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+}
@@ -0,0 +1,100 @@
+package kameleoon.apiweather.cache;
+
+import kameleoon.apiweather.rest.entity.WeatherData;
+import kameleoon.apiweather.rest.repository.WeatherRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PersistentWeatherCacheTest {
+
+    private final WeatherRepository repository = mock(WeatherRepository.class);
+    private final PollingEngine pollingEngine = new PollingEngine(4, 4);
+    private final PersistentWeatherCache cache = new PersistentWeatherCache(repository, pollingEngine, true,
+            60_000, 3_600_000, 100);
+
+    @AfterEach
+    void tearDown() {
+        pollingEngine.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void writesAreCoalescedPerCityAndFlushedInOneBatch() {
+        long now = System.currentTimeMillis();
+        cache.store("London", "{\"v\":1}", now - 10);
+        cache.store("London", "{\"v\":2}", now);
+        cache.store("Paris", "{\"v\":3}", now);
+
+        assertEquals("{\"v\":2}", cache.find("London", 60_000).json());
+        verify(repository, never()).findByCityNameAndTimestampAfter(any(), any());
+
+        WeatherData existing = new WeatherData("Paris", "{\"v\":0}", LocalDateTime.now().minusHours(1));
+        when(repository.findByCityNameIn(anyCollection())).thenReturn(List.of(existing));
+        cache.flush();
+
+        ArgumentCaptor<List<WeatherData>> rows = ArgumentCaptor.forClass(List.class);
+        verify(repository, times(1)).saveAll(rows.capture());
+        assertEquals(2, rows.getValue().size());
+        assertEquals("{\"v\":3}", existing.getWeatherJson());
+        assertEquals(0, cache.getStats().get("pendingWrites"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void writeDuringFlushIsPersistedByNextFlush() {
+        long now = System.currentTimeMillis();
+        cache.store("London", "{\"v\":1}", now);
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            cache.store("London", "{\"v\":2}", now + 1);
+            return invocation.getArgument(0);
+        }).thenAnswer(invocation -> invocation.getArgument(0));
+
+        cache.flush();
+        assertEquals(1, cache.getStats().get("pendingWrites"));
+        cache.flush();
+
+        ArgumentCaptor<List<WeatherData>> rows = ArgumentCaptor.forClass(List.class);
+        verify(repository, times(2)).saveAll(rows.capture());
+        assertEquals("{\"v\":2}", rows.getAllValues().get(1).get(0).getWeatherJson());
+        assertEquals(0, cache.getStats().get("pendingWrites"));
+    }
+
+    @Test
+    void failedFlushKeepsWritesForRetry() {
+        cache.store("London", "{}", System.currentTimeMillis());
+        when(repository.findByCityNameIn(anyCollection())).thenThrow(new IllegalStateException("db down"));
+
+        cache.flush();
+
+        assertEquals(1, cache.getStats().get("pendingWrites"));
+        assertEquals(1L, cache.getStats().get("failedFlushCount"));
+    }
+
+    @Test
+    void lookupFallsBackToRepositoryAndTreatsErrorsAsMiss() {
+        WeatherData row = new WeatherData("Berlin", "{}", LocalDateTime.now());
+        when(repository.findByCityNameAndTimestampAfter(eq("Berlin"), any())).thenReturn(Optional.of(row));
+        when(repository.findByCityNameAndTimestampAfter(eq("Oslo"), any())).thenThrow(new IllegalStateException("db down"));
+
+        assertNotNull(cache.find("Berlin", 60_000));
+        assertNull(cache.find("Oslo", 60_000));
+        assertNull(cache.find("Rome", 60_000));
+    }
+}
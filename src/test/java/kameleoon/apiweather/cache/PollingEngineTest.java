@@ -0,0 +1,51 @@
+package kameleoon.apiweather.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PollingEngineTest {
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final PollingEngine engine = new PollingEngine(64, 1);
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    void tenThousandPollingKeysDoNotGrowThreadCount() throws Exception {
+        int keys = 10_000;
+        CountDownLatch firstRuns = new CountDownLatch(keys);
+        int threadsBefore = threads.getThreadCount();
+
+        for (int i = 0; i < keys; i++) {
+            engine.schedule("api-key-" + i, "refresh", 0, TimeUnit.MINUTES.toMillis(1), firstRuns::countDown);
+        }
+
+        assertTrue(firstRuns.await(30, TimeUnit.SECONDS));
+        assertEquals(keys, engine.getStats().get("scheduledTasks"));
+        // виртуальные потоки работают поверх общего ForkJoinPool, который не больше числа ядер
+        int allowedGrowth = Runtime.getRuntime().availableProcessors() + 2;
+        assertTrue(threads.getThreadCount() - threadsBefore <= allowedGrowth,
+                "thread count grew from " + threadsBefore + " to " + threads.getThreadCount());
+    }
+
+    @Test
+    void cancelledGroupStopsRunning() throws Exception {
+        CountDownLatch firstRun = new CountDownLatch(1);
+        engine.schedule("api-key", "refresh", 0, 50, firstRun::countDown);
+        assertTrue(firstRun.await(5, TimeUnit.SECONDS));
+
+        engine.cancelGroup("api-key");
+
+        assertEquals(0, engine.getStats().get("scheduledTasks"));
+    }
+}
@@ -0,0 +1,130 @@
+package kameleoon.apiweather.cache;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadBufferTest {
+
+    private static final int READERS = 8;
+
+    @Test
+    void concurrentOffersAreDrainedOnceEach() throws Exception {
+        ReadBuffer<String> buffer = new ReadBuffer<>();
+        ReentrantLock lock = new ReentrantLock();
+        List<String> drained = new ArrayList<>();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            int reader = r;
+            readers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 50_000; i++) {
+                        // так же, как BoundedCache.recordRead: разбор под tryLock тем, кто заполнил полосу
+                        if (buffer.offer(reader + ":" + i) && lock.tryLock()) {
+                            try {
+                                buffer.drainTo(drained::add);
+                            } finally {
+                                lock.unlock();
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        lock.lock();
+        try {
+            buffer.drainTo(drained::add);
+        } finally {
+            lock.unlock();
+        }
+
+        assertTrue(failures.isEmpty(), () -> "reader failed: " + failures.peek());
+        Set<String> unique = new HashSet<>(drained);
+        assertEquals(drained.size(), unique.size(), "a key was drained twice");
+        for (String key : drained) {
+            assertNotNull(key);
+        }
+        assertTrue(drained.size() <= READERS * 50_000);
+
+        List<String> leftover = new ArrayList<>();
+        buffer.drainTo(leftover::add);
+        assertTrue(leftover.isEmpty(), "buffer not empty after final drain: " + leftover.size());
+    }
+
+    @Test
+    void cacheKeepsBoundAndPolicyInSyncUnderConcurrentReadsAndWrites() throws Exception {
+        int maximumSize = 64;
+        for (String policy : new String[]{LruPolicy.NAME, WindowTinyLfuPolicy.NAME}) {
+            BoundedCache<String, Integer> cache = BoundedCache.create(maximumSize, policy);
+            AtomicBoolean writing = new AtomicBoolean(true);
+            ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+            List<Thread> readers = new ArrayList<>();
+            for (int r = 0; r < READERS; r++) {
+                readers.add(Thread.ofPlatform().start(() -> {
+                    try {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        while (writing.get()) {
+                            cache.get("city-" + random.nextInt(2_000));
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }));
+            }
+            Thread writer = Thread.ofPlatform().start(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        cache.put("city-" + (i % 2_000), i);
+                        if (cache.size() > maximumSize) {
+                            throw new AssertionError("size " + cache.size() + " exceeds " + maximumSize);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                } finally {
+                    writing.set(false);
+                }
+            });
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+            for (Thread reader : readers) {
+                reader.join();
+            }
+
+            assertTrue(failures.isEmpty(), () -> policy + ": " + failures.peek());
+            assertEquals(maximumSize, cache.size());
+            // ключ, потерянный политикой, не вытесняется и раздувает кэш, а лишний ключ в политике уменьшает его
+            for (int i = 0; i < maximumSize * 4; i++) {
+                cache.put("fresh-" + i, i);
+            }
+            assertEquals(maximumSize, cache.size());
+            if (LruPolicy.NAME.equals(policy)) {
+                for (String key : cache.keys()) {
+                    assertTrue(key.startsWith("fresh-"), "lru kept untracked key " + key);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package kameleoon.apiweather.client;
+
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(2000);
+
+    @Test
+    void staysClosedUntilMinimumCallsAndOpensOnFailureRate() {
+        CircuitBreaker breaker = new CircuitBreaker(true, 10, 4, 0.5, 1000, 1.0, 60000, 1);
+        breaker.onResult(FAST, true);
+        breaker.onResult(FAST, true);
+        breaker.onResult(FAST, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        breaker.onResult(FAST, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquirePermission());
+        assertEquals(1L, breaker.getStats().get("rejectedCalls"));
+    }
+
+    @Test
+    void slidingWindowForgetsOldFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(true, 4, 4, 0.75, 1000, 1.0, 60000, 1);
+        breaker.onResult(FAST, true);
+        breaker.onResult(FAST, true);
+        for (int i = 0; i < 10; i++) {
+            breaker.onResult(FAST, false);
+        }
+        breaker.onResult(FAST, true);
+        breaker.onResult(FAST, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void slowCallsOpenTheCircuit() {
+        CircuitBreaker breaker = new CircuitBreaker(true, 4, 4, 1.0, 1000, 0.5, 60000, 1);
+        breaker.onResult(SLOW, false);
+        breaker.onResult(FAST, false);
+        breaker.onResult(FAST, false);
+        breaker.onResult(SLOW, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void halfOpenLimitsProbesAndReopensOnFailure() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(true, 2, 2, 0.5, 1000, 1.0, 50, 2);
+        breaker.onResult(FAST, true);
+        breaker.onResult(FAST, true);
+        Thread.sleep(60);
+
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.tryAcquirePermission());
+        assertFalse(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        breaker.onResult(FAST, false);
+        breaker.onResult(FAST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        Thread.sleep(60);
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.onResult(FAST, false);
+        breaker.onResult(FAST, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(2L, breaker.getStats().get("openedCount"));
+    }
+
+    @Test
+    void releasedProbeCountsAsNeitherSuccessNorFailure() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(true, 2, 2, 0.5, 1000, 1.0, 50, 1);
+        breaker.onResult(FAST, true);
+        breaker.onResult(FAST, true);
+        Thread.sleep(60);
+
+        assertTrue(breaker.tryAcquirePermission());
+        assertFalse(breaker.tryAcquirePermission());
+        // пробный вызов прерван: цепь не замыкается, а разрешение достаётся следующему пробному вызову
+        breaker.releasePermission();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+}
@@ -0,0 +1,186 @@
+package kameleoon.apiweather.client;
+
+import kameleoon.apiweather.StubWeatherServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenWeatherMapClientTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private StubWeatherServer stub;
+    private OpenWeatherMapClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubWeatherServer();
+        client = new OpenWeatherMapClient(1000, 500, 2, 16, 1000, CircuitBreaker.disabled());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        client.shutdown();
+        stub.close();
+    }
+
+    private String getString(String url) {
+        return client.get(url, (status, body) -> new String(body.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    private CompletableFuture<String> getAsync(String url) {
+        return CompletableFuture.supplyAsync(() -> getString(url), executor);
+    }
+
+    @Test
+    void sequentialRequestsReuseKeepAliveConnection() {
+        for (int i = 0; i < 10; i++) {
+            String body = getString(stub.weatherUrl() + "?q=London&appid=key");
+            assertTrue(body.contains("\"name\":\"London\""));
+        }
+        assertEquals(10, stub.weatherCalls());
+        assertEquals(1, stub.distinctConnections());
+    }
+
+    @Test
+    void encodesCityNamesLikeRestTemplate() {
+        String body = getString(stub.weatherUrl() + "?q=New York&appid=key");
+        assertTrue(body.contains("\"name\":\"New york\""));
+    }
+
+    @Test
+    void mapsErrorStatusesToRestClientExceptions() {
+        HttpClientErrorException notFound = assertThrows(HttpClientErrorException.class,
+                () -> getString(stub.weatherUrl() + "?q=UnknownCity&appid=key"));
+        assertEquals(HttpStatus.NOT_FOUND, notFound.getStatusCode());
+        assertTrue(notFound.getResponseBodyAsString().contains("city not found"));
+
+        stub.setFailureStatus(503);
+        HttpServerErrorException unavailable = assertThrows(HttpServerErrorException.class,
+                () -> getString(stub.weatherUrl() + "?q=London&appid=key"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, unavailable.getStatusCode());
+    }
+
+    @Test
+    void slowUpstreamTimesOut() {
+        stub.setDelayMillis(1500);
+        assertThrows(ResourceAccessException.class,
+                () -> getString(stub.weatherUrl() + "?q=London&appid=key"));
+        assertEquals(1L, client.getStats().get("timeouts"));
+    }
+
+    @Test
+    void asyncRequestsRespectPerHostConnectionCap() throws Exception {
+        stub.setDelayMillis(150);
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(getAsync(stub.weatherUrl() + "?q=Paris&appid=key"));
+        }
+        for (CompletableFuture<String> future : futures) {
+            assertTrue(future.get(5, TimeUnit.SECONDS).contains("\"name\":\"Paris\""));
+        }
+        // при лимите в два соединения четыре запроса идут минимум в две волны
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300);
+        assertTrue(stub.distinctConnections() <= 2);
+
+        Map<?, ?> latency = (Map<?, ?>) client.getStats().get("latency");
+        assertEquals(4L, latency.get("count"));
+        assertTrue((Long) latency.get("p50Millis") >= 127);
+    }
+
+    @Test
+    void failingUpstreamOpensCircuitAndHalfOpenProbeClosesIt() throws Exception {
+        client.shutdown();
+        CircuitBreaker breaker = new CircuitBreaker(true, 4, 4, 0.5, 1000, 1.0, 200, 1);
+        client = new OpenWeatherMapClient(1000, 500, 2, 16, 1000, breaker);
+        String url = stub.weatherUrl() + "?q=London&appid=key";
+
+        stub.setFailureStatus(500);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(HttpServerErrorException.class, () -> getString(url));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        // разомкнутая цепь не доходит до OpenWeatherMap
+        assertThrows(UpstreamUnavailableException.class, () -> getString(url));
+        assertEquals(4, stub.weatherCalls());
+
+        stub.setFailureStatus(0);
+        Thread.sleep(250);
+        assertTrue(getString(url).contains("\"name\":\"London\""));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void quotaResponsesDoNotOpenSharedCircuit() {
+        client.shutdown();
+        CircuitBreaker breaker = new CircuitBreaker(true, 4, 4, 0.5, 1000, 1.0, 200, 1);
+        client = new OpenWeatherMapClient(1000, 500, 2, 16, 1000, breaker);
+        String url = stub.weatherUrl() + "?q=London&appid=key";
+
+        // квота одного ключа исчерпана: остальным ключам OpenWeatherMap по-прежнему доступен
+        stub.setFailureStatus(429);
+        for (int i = 0; i < 8; i++) {
+            HttpClientErrorException tooManyRequests = assertThrows(HttpClientErrorException.class, () -> getString(url));
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, tooManyRequests.getStatusCode());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void interruptedCallIsNotRecordedByCircuitBreaker() throws Exception {
+        client.shutdown();
+        CircuitBreaker breaker = new CircuitBreaker(true, 4, 4, 0.5, 1000, 1.0, 200, 1);
+        client = new OpenWeatherMapClient(1000, 2000, 2, 16, 1000, breaker);
+        stub.setDelayMillis(500);
+        List<Throwable> failures = new ArrayList<>();
+        boolean[] interruptFlag = new boolean[1];
+
+        Thread caller = Thread.ofPlatform().start(() -> {
+            try {
+                getString(stub.weatherUrl() + "?q=London&appid=key");
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+            interruptFlag[0] = Thread.currentThread().isInterrupted();
+        });
+        Thread.sleep(100);
+        caller.interrupt();
+        caller.join(5000);
+
+        assertTrue(failures.get(0) instanceof ResourceAccessException, String.valueOf(failures));
+        assertTrue(interruptFlag[0]);
+        assertEquals(0, breaker.getStats().get("windowCalls"));
+    }
+
+    @Test
+    void fullBulkheadRejectsWithoutQueueing() throws Exception {
+        client.shutdown();
+        client = new OpenWeatherMapClient(1000, 2000, 8, 1, 0, CircuitBreaker.disabled());
+        stub.setDelayMillis(300);
+        CompletableFuture<String> first = getAsync(stub.weatherUrl() + "?q=Paris&appid=key");
+        Thread.sleep(100);
+
+        assertThrows(UpstreamUnavailableException.class,
+                () -> getString(stub.weatherUrl() + "?q=Rome&appid=key"));
+        assertTrue(first.get(5, TimeUnit.SECONDS).contains("\"name\":\"Paris\""));
+        assertEquals(1L, ((Map<?, ?>) client.getStats().get("bulkhead")).get("rejected"));
+    }
+}
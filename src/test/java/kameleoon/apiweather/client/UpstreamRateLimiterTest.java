@@ -0,0 +1,72 @@
+package kameleoon.apiweather.client;
+
+import org.junit.jupiter.api.Test;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamRateLimiterTest {
+
+    private static final String API_KEY = "key";
+
+    @Test
+    void backgroundRefreshesLeaveReserveForOnDemand() {
+        UpstreamRateLimiter limiter = new UpstreamRateLimiter(true, 1, 5, 0.4, 0);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(API_KEY, UpstreamRateLimiter.Priority.BACKGROUND));
+        }
+        assertFalse(limiter.tryAcquire(API_KEY, UpstreamRateLimiter.Priority.BACKGROUND));
+
+        assertTrue(limiter.tryAcquire(API_KEY, UpstreamRateLimiter.Priority.ON_DEMAND));
+        assertTrue(limiter.tryAcquire(API_KEY, UpstreamRateLimiter.Priority.ON_DEMAND));
+        assertFalse(limiter.tryAcquire(API_KEY, UpstreamRateLimiter.Priority.ON_DEMAND));
+
+        assertEquals(1L, limiter.getStats(API_KEY).get("deferredBackground"));
+        assertEquals(1L, limiter.getStats(API_KEY).get("throttledOnDemand"));
+        // квота у другого ключа своя
+        assertTrue(limiter.tryAcquire("other-key", UpstreamRateLimiter.Priority.BACKGROUND));
+    }
+
+    @Test
+    void onDemandWaitsForNextTokenWithinMaxWait() {
+        // 600 вызовов в минуту — токен каждые 100 мс
+        UpstreamRateLimiter limiter = new UpstreamRateLimiter(true, 600, 1, 0, 500);
+        assertTrue(limiter.tryAcquire(API_KEY, UpstreamRateLimiter.Priority.ON_DEMAND));
+
+        long start = System.nanoTime();
+        assertTrue(limiter.tryAcquire(API_KEY, UpstreamRateLimiter.Priority.ON_DEMAND));
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waitedMillis >= 50 && waitedMillis < 500, "waited " + waitedMillis + " ms");
+        assertEquals(1L, limiter.getStats(API_KEY).get("queuedOnDemand"));
+
+        assertFalse(limiter.tryAcquire(API_KEY, UpstreamRateLimiter.Priority.BACKGROUND));
+    }
+
+    @Test
+    void globalStatsAreAggregatedWithoutKeys() {
+        UpstreamRateLimiter limiter = new UpstreamRateLimiter(true, 1, 2, 0, 0);
+        limiter.tryAcquire(API_KEY, UpstreamRateLimiter.Priority.ON_DEMAND);
+        limiter.tryAcquire(API_KEY, UpstreamRateLimiter.Priority.ON_DEMAND);
+        limiter.tryAcquire(API_KEY, UpstreamRateLimiter.Priority.ON_DEMAND);
+        limiter.tryAcquire("other-key", UpstreamRateLimiter.Priority.ON_DEMAND);
+
+        Map<String, Object> stats = limiter.getStats();
+
+        assertEquals(2, stats.get("apiKeys"));
+        assertEquals(1L, stats.get("remainingTokensTotal"));
+        assertEquals(1L, stats.get("throttledOnDemand"));
+        assertFalse(stats.toString().contains("other-key"));
+    }
+
+    @Test
+    void disabledLimiterAlwaysGrants() {
+        UpstreamRateLimiter limiter = new UpstreamRateLimiter(false, 1, 1, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire(API_KEY, UpstreamRateLimiter.Priority.BACKGROUND));
+        }
+    }
+}
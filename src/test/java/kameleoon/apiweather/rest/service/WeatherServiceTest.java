@@ -0,0 +1,100 @@
+package kameleoon.apiweather.rest.service;
+
+import kameleoon.apiweather.StubWeatherServer;
+import kameleoon.apiweather.cache.CityNameCanonicalizer;
+import kameleoon.apiweather.cache.CityNotFoundCache;
+import kameleoon.apiweather.cache.PersistentWeatherCache;
+import kameleoon.apiweather.cache.PollingEngine;
+import kameleoon.apiweather.client.CircuitBreaker;
+import kameleoon.apiweather.client.OpenWeatherMapClient;
+import kameleoon.apiweather.client.UpstreamRateLimiter;
+import kameleoon.apiweather.rest.dto.WeatherResponseDto;
+import kameleoon.apiweather.rest.repository.WeatherRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WeatherServiceTest {
+
+    private static final String API_KEY = "test-key";
+
+    private StubWeatherServer stub;
+    private PollingEngine pollingEngine;
+    private PersistentWeatherCache persistentCache;
+    private CityNameCanonicalizer cityNames;
+    private WeatherService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubWeatherServer();
+        pollingEngine = new PollingEngine(16, 4);
+        ApiKeyService apiKeyService = mock(ApiKeyService.class);
+        when(apiKeyService.isValidApiKey(API_KEY)).thenReturn(true);
+        persistentCache = new PersistentWeatherCache(mock(WeatherRepository.class), pollingEngine, true,
+                1000, 3600000, 10000);
+        cityNames = new CityNameCanonicalizer(true, 1000);
+        service = new WeatherService(apiKeyService, pollingEngine, persistentCache, cityNames,
+                new CityNotFoundCache(100, 60000),
+                new OpenWeatherMapClient(1000, 2000, 16, 16, 1000, CircuitBreaker.disabled()),
+                new UpstreamRateLimiter(false, 60, 60, 0.2, 500));
+        ReflectionTestUtils.setField(service, "weatherApiUrl", stub.weatherUrl());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+        pollingEngine.shutdown();
+        stub.close();
+    }
+
+    @Test
+    void pollingRefreshesDueCitiesWithGroupRequests() throws Exception {
+        ReflectionTestUtils.setField(service, "groupApiUrl", stub.groupUrl());
+        ReflectionTestUtils.setField(service, "refreshBatchSize", 4);
+        ReflectionTestUtils.setField(service, "refreshBatchWindowMillis", 100L);
+        ReflectionTestUtils.setField(service, "refreshJitterMillis", 0L);
+        ReflectionTestUtils.setField(service, "cacheTtlMillis", 500L);
+        List<String> cities = List.of("Paris", "Berlin", "Madrid", "Rome", "Vienna", "Prague", "Oslo", "Lisbon");
+        for (String city : cities) {
+            service.getWeatherForCity(city, API_KEY, "polling");
+        }
+        assertEquals(8, stub.weatherCalls());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (groupRefreshedCities() < cities.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        // все восемь городов обновлены group-запросами не больше чем по четыре id, без отдельных запросов
+        assertTrue(stub.groupIds() >= cities.size());
+        assertTrue(stub.maxGroupSize() <= 4);
+        assertTrue(stub.groupCalls() < cities.size());
+        assertEquals(8, stub.weatherCalls());
+    }
+
+    @Test
+    void storedGroupElementIsServedFromSecondLevelCache() {
+        // элемент group, записанный SDK или group-обновлением: в нём есть поля, которых нет в DTO REST
+        String groupElement = StubWeatherServer.weatherJson("London")
+                .replace("\"sunset\":1485794875}", "\"sunset\":1485794875,\"timezone\":0}")
+                .replace("\"clouds\":", "\"rain\":{\"1h\":0.3},\"clouds\":");
+        persistentCache.store(cityNames.resolve("London"), groupElement, System.currentTimeMillis());
+
+        WeatherResponseDto weather = service.getWeatherForCity("London", API_KEY, "on-demand");
+
+        assertEquals("London", weather.getName());
+        assertEquals(0, stub.weatherCalls());
+    }
+
+    private long groupRefreshedCities() {
+        Map<?, ?> groupRefresh = (Map<?, ?>) service.getUpstreamStats().get("groupRefresh");
+        return (Long) groupRefresh.get("refreshedCities");
+    }
+}
@@ -0,0 +1,39 @@
+package kameleoon.apiweather.sdk.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kameleoon.apiweather.StubWeatherServer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WeatherResponseSdkCodecTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void binaryRoundTripPreservesEveryField() throws Exception {
+        String json = StubWeatherServer.weatherJson("Москва").replace("\"cod\":200",
+                "\"rain\":{\"1h\":0.25},\"snow\":{\"3h\":1.5},\"cod\":200");
+        WeatherResponseSdkDto original = objectMapper.readValue(json, WeatherResponseSdkDto.class);
+
+        WeatherResponseSdkDto decoded = WeatherResponseSdkCodec.decode(WeatherResponseSdkCodec.encode(original));
+
+        assertEquals(objectMapper.writeValueAsString(original), objectMapper.writeValueAsString(decoded));
+    }
+
+    // Базой служат измеренные размеры JSON: строка в куче (UTF-16) и сериализованный DTO в UTF-8.
+    // Размер самого DTO здесь не проверяется: estimateHeapBytes лишь оценка для статистики
+    @Test
+    void binaryFormIsSmallerThanJsonForms() throws Exception {
+        String json = StubWeatherServer.weatherJson("London");
+        WeatherResponseSdkDto dto = objectMapper.readValue(json, WeatherResponseSdkDto.class);
+
+        long jsonStringBytes = 2L * json.length();
+        int serializedDtoBytes = objectMapper.writeValueAsBytes(dto).length;
+        int binaryBytes = WeatherResponseSdkCodec.encode(dto).length;
+
+        assertTrue(binaryBytes * 2 < jsonStringBytes, binaryBytes + " vs JSON string " + jsonStringBytes);
+        assertTrue(binaryBytes * 2 < serializedDtoBytes, binaryBytes + " vs serialized DTO " + serializedDtoBytes);
+    }
+}
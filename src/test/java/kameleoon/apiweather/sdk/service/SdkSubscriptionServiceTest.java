@@ -0,0 +1,157 @@
+package kameleoon.apiweather.sdk.service;
+
+import kameleoon.apiweather.StubWeatherServer;
+import kameleoon.apiweather.cache.CityNameCanonicalizer;
+import kameleoon.apiweather.cache.CityNotFoundCache;
+import kameleoon.apiweather.cache.OffHeapStore;
+import kameleoon.apiweather.cache.PersistentWeatherCache;
+import kameleoon.apiweather.cache.PollingEngine;
+import kameleoon.apiweather.client.CircuitBreaker;
+import kameleoon.apiweather.client.OpenWeatherMapClient;
+import kameleoon.apiweather.client.UpstreamRateLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SdkSubscriptionServiceTest {
+
+    private static final String API_KEY = "test-key";
+
+    private final List<RecordingEmitter> emitters = new CopyOnWriteArrayList<>();
+    private StubWeatherServer stub;
+    private PollingEngine pollingEngine;
+    private SdkSubscriptionService subscriptionService;
+    private SdkWeatherService weatherService;
+
+    // Вне Spring MVC у SseEmitter нет обработчика: события и колбэки завершения перехватываются здесь
+    private static final class RecordingEmitter extends SseEmitter {
+        final List<Set<DataWithMediaType>> events = new CopyOnWriteArrayList<>();
+        Runnable onCompletion;
+        Runnable onTimeout;
+        // медленный клиент: параллельные отправки успели бы обогнать друг друга
+        volatile boolean slow;
+
+        @Override
+        public void send(Set<DataWithMediaType> items) {
+            if (slow) {
+                LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(1_000_000));
+            }
+            events.add(items);
+        }
+
+        @Override
+        public void onCompletion(Runnable callback) {
+            onCompletion = callback;
+        }
+
+        @Override
+        public void onTimeout(Runnable callback) {
+            onTimeout = callback;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubWeatherServer();
+        pollingEngine = new PollingEngine(16, 4);
+        subscriptionService = new SdkSubscriptionService() {
+            @Override
+            SseEmitter newEmitter() {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitters.add(emitter);
+                return emitter;
+            }
+        };
+        weatherService = new SdkWeatherService(pollingEngine, subscriptionService,
+                new PersistentWeatherCache(null, pollingEngine, false, 1000, 3600000, 10000),
+                new OffHeapStore(1 << 20, 1 << 16), new CityNameCanonicalizer(true, 1000),
+                new CityNotFoundCache(100, 60000), new OpenWeatherMapClient(1000, 2000, 16, 16, 1000, CircuitBreaker.disabled()),
+                new UpstreamRateLimiter(false, 60, 60, 0.2, 500));
+        ReflectionTestUtils.setField(weatherService, "weatherApiUrl", stub.weatherUrl());
+        ReflectionTestUtils.setField(weatherService, "cacheTtlMillis", 0L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        weatherService.shutdown();
+        subscriptionService.shutdown();
+        pollingEngine.shutdown();
+        stub.close();
+    }
+
+    @Test
+    void onlyChangedWeatherIsPushedToSubscribers() throws Exception {
+        weatherService.getWeatherForCity("London", API_KEY, "on-demand");
+        subscriptionService.subscribe(API_KEY, List.of("london"));
+        RecordingEmitter emitter = emitters.get(0);
+
+        // тот же ответ OpenWeatherMap: хэш совпадает, событие не отправляется
+        weatherService.getWeatherForCity("London", API_KEY, "on-demand");
+        stub.setTemperature("9.5");
+        weatherService.getWeatherForCity("London", API_KEY, "on-demand");
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (emitter.events.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(100);
+        assertEquals(1, emitter.events.size());
+        assertTrue(emitter.events.get(0).stream().anyMatch(part -> String.valueOf(part.getData()).contains("9.5")));
+
+        Map<String, Object> stats = subscriptionService.getStats(API_KEY);
+        assertEquals(1L, stats.get("suppressedUpdates"));
+        assertEquals(1L, stats.get("publishedUpdates"));
+        assertEquals(1L, stats.get("deliveredEvents"));
+    }
+
+    @Test
+    void completedAndTimedOutEmittersAreUnregistered() {
+        subscriptionService.subscribe(API_KEY, List.of("london"));
+        subscriptionService.subscribe(API_KEY, List.of());
+        assertEquals(2, subscriptionService.getStats(API_KEY).get("subscriptions"));
+        assertTrue(subscriptionService.hasSubscribers(API_KEY, "paris"));
+
+        emitters.get(0).onCompletion.run();
+        assertEquals(1, subscriptionService.getStats(API_KEY).get("subscriptions"));
+
+        emitters.get(1).onTimeout.run();
+        assertEquals(0, subscriptionService.getStats(API_KEY).get("subscriptions"));
+        assertFalse(subscriptionService.hasSubscribers(API_KEY, "london"));
+        // пустые наборы городов и карта ключа не остаются после отписки
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(subscriptionService, "subscribers")).isEmpty());
+    }
+
+    @Test
+    void updatesReachSubscriberInPublishOrder() throws Exception {
+        subscriptionService.subscribe(API_KEY, List.of("london"));
+        RecordingEmitter emitter = emitters.get(0);
+        emitter.slow = true;
+
+        for (int i = 0; i < 50; i++) {
+            subscriptionService.publish(API_KEY, "london", "{\"v\":" + i + "}");
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (emitter.events.size() < 50 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(50, emitter.events.size());
+        for (int i = 0; i < 50; i++) {
+            String expected = "{\"v\":" + i + "}";
+            assertTrue(emitter.events.get(i).stream().anyMatch(part -> expected.equals(part.getData())),
+                    "event " + i + " out of order");
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package kameleoon.apiweather.sdk.service;
+
+import kameleoon.apiweather.StubWeatherServer;
+import kameleoon.apiweather.cache.CityNameCanonicalizer;
+import kameleoon.apiweather.cache.CityNotFoundCache;
+import kameleoon.apiweather.cache.OffHeapStore;
+import kameleoon.apiweather.cache.PersistentWeatherCache;
+import kameleoon.apiweather.cache.PollingEngine;
+import kameleoon.apiweather.client.CircuitBreaker;
+import kameleoon.apiweather.client.OpenWeatherMapClient;
+import kameleoon.apiweather.client.UpstreamRateLimiter;
+import kameleoon.apiweather.sdk.SdkConfig;
+import kameleoon.apiweather.sdk.SdkWeather;
+import kameleoon.apiweather.sdk.dto.WeatherResponseSdkDto;
+import kameleoon.apiweather.sdk.exception.SdkCityNotFoundException;
+import kameleoon.apiweather.sdk.exception.SdkRateLimitExceededException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpServerErrorException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SdkWeatherServiceTest {
+
+    private static final String API_KEY = "test-key";
+    private static final String STALE_WHILE_REVALIDATE = "stale-while-revalidate";
+
+    private StubWeatherServer stub;
+    private PollingEngine pollingEngine;
+    private SdkWeatherService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubWeatherServer();
+        pollingEngine = new PollingEngine(16, 4);
+        service = new SdkWeatherService(pollingEngine, new SdkSubscriptionService(),
+                new PersistentWeatherCache(null, pollingEngine, false, 1000, 3600000, 10000),
+                new OffHeapStore(1 << 20, 1 << 16), new CityNameCanonicalizer(true, 1000),
+                new CityNotFoundCache(100, 60000), new OpenWeatherMapClient(1000, 2000, 16, 16, 1000, CircuitBreaker.disabled()),
+                new UpstreamRateLimiter(false, 60, 60, 0.2, 500));
+        ReflectionTestUtils.setField(service, "weatherApiUrl", stub.weatherUrl());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+        pollingEngine.shutdown();
+        stub.close();
+    }
+
+    @Test
+    void concurrentMissesForExpiredCityShareSingleUpstreamCall() throws Exception {
+        ReflectionTestUtils.setField(service, "cacheTtlMillis", 100L);
+        service.getWeatherForCity("London", API_KEY, "on-demand");
+        Thread.sleep(150);
+
+        stub.setDelayMillis(200);
+        int requests = 500;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<WeatherResponseSdkDto>> results = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < requests; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return service.getWeatherForCity("London", API_KEY, "on-demand");
+                }));
+            }
+            start.countDown();
+            for (Future<WeatherResponseSdkDto> result : results) {
+                assertEquals("London", result.get().getName());
+            }
+        }
+
+        assertEquals(2, stub.weatherCalls());
+    }
+
+    @Test
+    void softExpiredEntryIsServedAtOnceAndRefreshedOnceInBackground() throws Exception {
+        service.initializeCacheForApiKey(API_KEY, staleWhileRevalidateConfig(1, 60));
+        service.getWeatherForCity("London", API_KEY, STALE_WHILE_REVALIDATE);
+        Thread.sleep(1100);
+
+        stub.setDelayMillis(300);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertEquals("London", service.getWeatherForCity("London", API_KEY, STALE_WHILE_REVALIDATE).getName());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis < 200, "stale reads took " + elapsedMillis + " ms");
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (stub.weatherCalls() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(100);
+        assertEquals(2, stub.weatherCalls());
+        assertEquals(5L, service.getCacheStats(API_KEY).get("staleHitCount"));
+    }
+
+    @Test
+    void hardExpiredEntryBlocksOnSynchronousLoad() throws Exception {
+        // жёсткий TTL короче weather.cache.ttl-millis: запись старше него не должна считаться свежей
+        service.initializeCacheForApiKey(API_KEY, staleWhileRevalidateConfig(1, 1));
+        service.getWeatherForCity("London", API_KEY, STALE_WHILE_REVALIDATE);
+        Thread.sleep(1100);
+
+        stub.setDelayMillis(300);
+        long start = System.nanoTime();
+        assertEquals("London", service.getWeatherForCity("London", API_KEY, STALE_WHILE_REVALIDATE).getName());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis >= 300, "hard-expired read returned after " + elapsedMillis + " ms");
+        assertEquals(2, stub.weatherCalls());
+        assertEquals(0L, service.getCacheStats(API_KEY).get("staleHitCount"));
+    }
+
+    private static SdkConfig staleWhileRevalidateConfig(long softTtlSeconds, long hardTtlSeconds) {
+        SdkConfig config = new SdkConfig();
+        config.setSoftTtlSeconds(softTtlSeconds);
+        config.setHardTtlSeconds(hardTtlSeconds);
+        return config;
+    }
+
+    @Test
+    void multipleCitiesAreFetchedInParallelAndKeepInputOrder() {
+        stub.setDelayMillis(300);
+        List<String> cities = List.of("Paris", "Berlin", "Madrid", "Rome", "Vienna", "Prague", "Oslo", "Lisbon");
+        SdkWeather.createInstance(API_KEY, "on-demand", service);
+        try {
+            long start = System.nanoTime();
+            List<Map<String, Object>> results = service.getMultipleWeatherForCities(API_KEY, cities, cities.size(), 5000);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // последовательно это заняло бы не меньше 8 * 300 мс
+            assertTrue(elapsedMillis < 1500, "fan-out took " + elapsedMillis + " ms");
+            for (int i = 0; i < cities.size(); i++) {
+                assertEquals(cities.get(i), results.get(i).get("city"));
+                assertEquals(cities.get(i), ((WeatherResponseSdkDto) results.get(i).get("data")).getName());
+            }
+        } finally {
+            SdkWeather.removeInstance(API_KEY);
+        }
+    }
+
+    @Test
+    void streamingEmitsCacheHitsBeforeUpstreamFetches() throws Exception {
+        SdkWeather.createInstance(API_KEY, "on-demand", service);
+        try {
+            service.getWeatherForCity("London", API_KEY, "on-demand");
+            stub.setDelayMillis(200);
+            List<Object> emittedCities = new CopyOnWriteArrayList<>();
+
+            service.streamMultipleWeatherForCities(API_KEY, List.of("Paris", "Berlin", "London"), 2,
+                    result -> emittedCities.add(result.get("city"))).get(5, TimeUnit.SECONDS);
+
+            assertEquals(3, emittedCities.size());
+            assertEquals("London", emittedCities.get(0));
+        } finally {
+            SdkWeather.removeInstance(API_KEY);
+        }
+    }
+
+    @Test
+    void citiesMissingTheDeadlineAreReportedAsTimedOut() {
+        stub.setDelayMillis(1000);
+        SdkWeather.createInstance(API_KEY, "on-demand", service);
+        try {
+            List<Map<String, Object>> results = service.getMultipleWeatherForCities(API_KEY, List.of("Paris"), 1, 200);
+
+            assertEquals(Boolean.TRUE, results.get(0).get("timedOut"));
+        } finally {
+            SdkWeather.removeInstance(API_KEY);
+        }
+    }
+
+    @Test
+    void restartedServiceServesSnapshotWithoutUpstreamCalls(@TempDir Path snapshotDir) {
+        ReflectionTestUtils.setField(service, "snapshotDirectory", snapshotDir.toString());
+        service.getWeatherForCity("London", API_KEY, "on-demand");
+        service.getWeatherForCity("Paris", API_KEY, "on-demand");
+        service.shutdown();
+
+        SdkWeatherService restarted = new SdkWeatherService(pollingEngine, new SdkSubscriptionService(),
+                new PersistentWeatherCache(null, pollingEngine, false, 1000, 3600000, 10000),
+                new OffHeapStore(1 << 20, 1 << 16), new CityNameCanonicalizer(true, 1000),
+                new CityNotFoundCache(100, 60000), new OpenWeatherMapClient(1000, 2000, 16, 16, 1000, CircuitBreaker.disabled()),
+                new UpstreamRateLimiter(false, 60, 60, 0.2, 500));
+        ReflectionTestUtils.setField(restarted, "weatherApiUrl", stub.weatherUrl());
+        ReflectionTestUtils.setField(restarted, "snapshotDirectory", snapshotDir.toString());
+        restarted.restoreSnapshot();
+        int callsBeforeRestart = stub.weatherCalls();
+
+        SdkWeather.createInstance(API_KEY, "on-demand", restarted);
+        try {
+            assertEquals("London", restarted.getWeatherForCity("London", API_KEY, "on-demand").getName());
+            assertEquals("Paris", restarted.getWeatherForCity("Paris", API_KEY, "on-demand").getName());
+            assertEquals(callsBeforeRestart, stub.weatherCalls());
+        } finally {
+            SdkWeather.removeInstance(API_KEY);
+            restarted.shutdown();
+        }
+    }
+
+    @Test
+    void offHeapPayloadsAreServedFromCache() {
+        ReflectionTestUtils.setField(service, "payloadFormat", "off-heap");
+        service.getWeatherForCity("London", API_KEY, "on-demand");
+
+        assertEquals("London", service.getWeatherForCity("London", API_KEY, "on-demand").getName());
+        assertEquals(1, stub.weatherCalls());
+    }
+
+    @Test
+    void spellingVariantsShareOneCacheSlot() {
+        service.getWeatherForCity("London", API_KEY, "on-demand");
+        service.getWeatherForCity(" london ", API_KEY, "on-demand");
+        service.getWeatherForCity("ＬＯＮＤＯＮ", API_KEY, "on-demand");
+        assertEquals(1, stub.weatherCalls());
+
+        // другое написание с тем же id города загружается один раз и дальше попадает в общий слот
+        service.getWeatherForCity("London, GB", API_KEY, "on-demand");
+        service.getWeatherForCity("london,gb", API_KEY, "on-demand");
+        assertEquals(2, stub.weatherCalls());
+        assertEquals(List.of("london"), service.getCachedCities(API_KEY));
+        assertEquals(1L, ((Map<?, ?>) service.getCacheStats(API_KEY).get("cityNames")).get("mergedDuplicateSlots"));
+    }
+
+    @Test
+    void nearbyLookupUsesCachedCityInsideRadius() {
+        service.getWeatherForCity("London", API_KEY, "on-demand");
+
+        Map<String, Object> cached = service.getWeatherNearby(API_KEY, 51.50, -0.12, 5, "on-demand");
+        assertEquals("cache", cached.get("source"));
+        assertEquals("london", cached.get("cityName"));
+        assertEquals(1, stub.weatherCalls());
+
+        Map<String, Object> fetched = service.getWeatherNearby(API_KEY, 48.85, 2.35, 5, "on-demand");
+        assertEquals("upstream", fetched.get("source"));
+        assertEquals(2, stub.weatherCalls());
+
+        assertEquals("cache", service.getWeatherNearby(API_KEY, 48.86, 2.35, 5, "on-demand").get("source"));
+        assertEquals(2, stub.weatherCalls());
+    }
+
+    @Test
+    void evictedCityLeavesSpatialIndex() {
+        SdkConfig config = new SdkConfig();
+        config.setCacheSize(1);
+        service.initializeCacheForApiKey(API_KEY, config);
+        assertEquals("upstream", service.getWeatherNearby(API_KEY, 48.85, 2.35, 5, "on-demand").get("source"));
+
+        // London вытесняет город у точки 48.85,2.35 и из кэша, и из индекса
+        service.getWeatherForCity("London", API_KEY, "on-demand");
+        assertEquals(1, service.getCacheStats(API_KEY).get("indexedLocations"));
+
+        assertEquals("upstream", service.getWeatherNearby(API_KEY, 48.85, 2.35, 5, "on-demand").get("source"));
+        assertEquals(3, stub.weatherCalls());
+    }
+
+    @Test
+    void streamingDecodeKeepsUpstreamJsonForSecondLevelCache() {
+        PersistentWeatherCache persistentCache = new PersistentWeatherCache(null, pollingEngine, true, 1000, 3600000, 10000);
+        SdkWeatherService withL2 = new SdkWeatherService(pollingEngine, new SdkSubscriptionService(), persistentCache,
+                new OffHeapStore(1 << 20, 1 << 16), new CityNameCanonicalizer(true, 1000),
+                new CityNotFoundCache(100, 60000), new OpenWeatherMapClient(1000, 2000, 16, 16, 1000, CircuitBreaker.disabled()),
+                new UpstreamRateLimiter(false, 60, 60, 0.2, 500));
+        ReflectionTestUtils.setField(withL2, "weatherApiUrl", stub.weatherUrl());
+        try {
+            assertEquals("London", withL2.getWeatherForCity("London", API_KEY, "on-demand").getName());
+            // в L2 лежит ответ OpenWeatherMap байт в байт, а не пересериализованный DTO
+            assertEquals(StubWeatherServer.weatherJson("london"), persistentCache.find("london", 60000).json());
+        } finally {
+            withL2.shutdown();
+        }
+    }
+
+    @Test
+    void exhaustedQuotaServesStaleDataOrRejects() {
+        ReflectionTestUtils.setField(service, "rateLimiter", new UpstreamRateLimiter(true, 1, 1, 0, 0));
+        ReflectionTestUtils.setField(service, "cacheTtlMillis", 0L);
+        service.getWeatherForCity("London", API_KEY, "on-demand");
+
+        // токен израсходован: истёкшая запись отдаётся без вызова OpenWeatherMap, для нового города — 429
+        assertEquals("London", service.getWeatherForCity("London", API_KEY, "on-demand").getName());
+        assertThrows(SdkRateLimitExceededException.class, () -> service.getWeatherForCity("Paris", API_KEY, "on-demand"));
+        assertEquals(1, stub.weatherCalls());
+
+        Map<?, ?> quota = (Map<?, ?>) service.getCacheStats(API_KEY).get("quota");
+        assertEquals(0L, quota.get("remainingTokens"));
+        assertEquals(2L, quota.get("throttledOnDemand"));
+    }
+
+    @Test
+    void failingUpstreamFallsBackToExpiredEntry() {
+        ReflectionTestUtils.setField(service, "cacheTtlMillis", 0L);
+        service.getWeatherForCity("London", API_KEY, "on-demand");
+
+        stub.setFailureStatus(503);
+        assertEquals("London", service.getWeatherForCity("London", API_KEY, "on-demand").getName());
+        assertThrows(HttpServerErrorException.class, () -> service.getWeatherForCity("Paris", API_KEY, "on-demand"));
+    }
+
+    @Test
+    void unknownCityIsAnsweredFromNegativeCache() {
+        assertThrows(SdkCityNotFoundException.class, () -> service.getWeatherForCity("Unknownville", API_KEY, "on-demand"));
+        assertThrows(SdkCityNotFoundException.class, () -> service.getWeatherForCity(" unknownville ", API_KEY, "on-demand"));
+        assertThrows(SdkCityNotFoundException.class, () -> service.getWeatherForCity("UNKNOWNVILLE", "other-key", "on-demand"));
+        assertEquals(1, stub.weatherCalls());
+
+        Map<?, ?> negative = (Map<?, ?>) service.getCacheStats(API_KEY).get("cityNotFound");
+        assertEquals(1, negative.get("size"));
+        assertEquals(2L, negative.get("hitCount"));
+    }
+
+    @Test
+    void pollingRefreshesDueCitiesWithGroupRequests() throws Exception {
+        ReflectionTestUtils.setField(service, "groupApiUrl", stub.groupUrl());
+        ReflectionTestUtils.setField(service, "refreshBatchSize", 4);
+        ReflectionTestUtils.setField(service, "refreshBatchWindowMillis", 100L);
+        ReflectionTestUtils.setField(service, "refreshJitterMillis", 0L);
+        ReflectionTestUtils.setField(service, "cacheTtlMillis", 500L);
+        List<String> cities = List.of("Paris", "Berlin", "Madrid", "Rome", "Vienna", "Prague", "Oslo", "Lisbon", "Dublin", "Warsaw");
+        for (String city : cities) {
+            service.getWeatherForCity(city, API_KEY, "polling");
+        }
+        assertEquals(10, stub.weatherCalls());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stub.groupIds() < cities.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        // все десять городов обновлены group-запросами не больше чем по четыре id, без отдельных запросов
+        assertTrue(stub.groupIds() >= cities.size());
+        assertTrue(stub.maxGroupSize() <= 4);
+        assertTrue(stub.groupCalls() < cities.size());
+        assertEquals(10, stub.weatherCalls());
+    }
+
+    @Test
+    void adaptivePollingFollowsReadsAndDropsIdleCities() throws Exception {
+        ReflectionTestUtils.setField(service, "cacheTtlMillis", 200L);
+        ReflectionTestUtils.setField(service, "refreshJitterMillis", 0L);
+        ReflectionTestUtils.setField(service, "hotReadsPerRefresh", 2);
+        ReflectionTestUtils.setField(service, "dropAfterIdleRefreshes", 1);
+        service.getWeatherForCity("Paris", API_KEY, "polling");
+        service.getWeatherForCity("Oslo", API_KEY, "polling");
+
+        // Paris читают постоянно, Oslo — ни разу после загрузки
+        long until = System.currentTimeMillis() + 1500;
+        while (System.currentTimeMillis() < until) {
+            service.getWeatherForCity("Paris", API_KEY, "polling");
+            Thread.sleep(20);
+        }
+        int osloCalls = stub.weatherCalls("Oslo");
+        // загрузка и обновление в срок; к следующему сроку чтений так и нет, и Oslo выпадает из polling без запроса
+        assertEquals(2, osloCalls);
+        assertTrue(stub.weatherCalls("Paris") >= 6, "Paris refreshed " + stub.weatherCalls("Paris") + " times");
+
+        Map<?, ?> adaptive = (Map<?, ?>) service.getCacheStats(API_KEY).get("adaptivePolling");
+        assertEquals(1L, adaptive.get("droppedFromPolling"));
+        assertTrue((Long) adaptive.get("hotRefreshes") >= 1);
+
+        // запрос возвращает город в polling
+        service.getWeatherForCity("Oslo", API_KEY, "polling");
+        Thread.sleep(300);
+        assertTrue(stub.weatherCalls("Oslo") >= osloCalls + 2);
+    }
+}